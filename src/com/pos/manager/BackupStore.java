@@ -0,0 +1,393 @@
+package com.pos.manager;
+
+import java.io.*;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Incremental backups made of compressed, content-addressed chunks.
+ *
+ * Every backed up file is cut into fixed-size chunks, each deflated and stored once under
+ * the SHA-256 hash of its content in a chunks directory shared by all backups. A backup
+ * directory holds only a manifest listing its files with their CRC-32 and chunks, so
+ * unchanged data (older month segments, the start of an append-only journal) costs nothing
+ * in a new backup. A file whose size and modification time match the previous backup is
+ * not even read again.
+ *
+ * Making a backup is split in two: {@link #stage} only hard-links the files and records
+ * their sizes, and is cheap enough to run while the owner keeps the files still; the
+ * reading, hashing, deflating and syncing in {@link #create} then runs on the staged links.
+ *
+ * The manifest is written last, so a backup without one is incomplete and is ignored.
+ * Restoring inflates the chunks straight into the data files and checks each file's CRC.
+ * Chunks no longer referenced by any manifest are removed when old backups are pruned.
+ */
+class BackupStore {
+
+    static final String MANIFEST_FILE = "manifest.dat";
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final String BACKUP_PREFIX = "backup_";
+    private static final String STAGING_PREFIX = "staging_";
+
+    private final Path root;
+    private final Path chunks;
+
+    BackupStore(String backupDir) {
+        this.root = Paths.get(backupDir);
+        this.chunks = root.resolve("chunks");
+        removeStagingLeftovers();
+    }
+
+    /**
+     * Whether a backup directory was made by this store (rather than being a plain copy)
+     */
+    static boolean isIncremental(Path backup) {
+        return Files.exists(backup.resolve(MANIFEST_FILE));
+    }
+
+    /**
+     * Capture the given files (paths relative to dataDir; missing files are skipped) for
+     * a backup, by hard-linking them into a staging directory (copying them where links
+     * are not supported) and recording their sizes and modification times.
+     * The data files are only ever replaced by renaming a new file over them, or appended
+     * to, so once the caller lets them change again a link still holds the captured
+     * content up to the recorded size.
+     */
+    Staged stage(Path dataDir, List<String> files) throws IOException {
+        Files.createDirectories(root);
+        Staged staged = new Staged(Files.createTempDirectory(root, STAGING_PREFIX));
+        try {
+            for (String file : files) {
+                Path source = dataDir.resolve(file);
+                if (!Files.isRegularFile(source)) {
+                    continue;
+                }
+                Path link = staged.directory.resolve(Integer.toString(staged.files.size()));
+                long size = Files.size(source);
+                long modified = Files.getLastModifiedTime(source).toMillis();
+                try {
+                    Files.createLink(link, source);
+                } catch (UnsupportedOperationException | IOException e) {
+                    Files.copy(source, link);
+                }
+                staged.files.add(new StagedFile(file, link, size, modified));
+            }
+        } catch (IOException e) {
+            staged.close();
+            throw e;
+        }
+        return staged;
+    }
+
+    /**
+     * Back up staged files into a new backup directory
+     */
+    synchronized void create(Staged staged, Path backup) throws IOException {
+        Files.createDirectories(chunks);
+        Files.createDirectories(backup);
+
+        Map<String, Entry> previous = new HashMap<>();
+        for (Entry entry : latestManifest()) {
+            previous.put(entry.path, entry);
+        }
+
+        List<Entry> manifest = new ArrayList<>();
+        for (StagedFile file : staged.files) {
+            Entry unchanged = previous.get(file.path);
+            if (unchanged != null && unchanged.size == file.size && unchanged.modified == file.modified
+                    && allChunksPresent(unchanged.chunks)) {
+                manifest.add(unchanged);
+            } else {
+                manifest.add(storeChunks(file.path, file.link, file.size, file.modified));
+            }
+        }
+
+        new FileGroupCommit()
+            .add(backup.resolve(MANIFEST_FILE).toString(), out -> DataCodec.writeBackupManifest(out, manifest))
+            .commit();
+    }
+
+    /**
+     * Read back every file of the backup and fail unless all of them match their checksums
+     */
+    synchronized void verify(Path backup) throws IOException {
+        OutputStream discard = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+        for (Entry entry : readManifest(backup)) {
+            inflate(entry, discard);
+        }
+    }
+
+    /**
+     * Write the files of a backup into dataDir in one {@link FileGroupCommit}, each file
+     * replaced atomically. Nothing is replaced if any file does not match its checksum.
+     */
+    synchronized void restore(Path backup, Path dataDir) throws IOException {
+        FileGroupCommit commit = new FileGroupCommit();
+        for (Entry entry : readManifest(backup)) {
+            Path target = dataDir.resolve(entry.path);
+            Files.createDirectories(target.getParent());
+            commit.add(target.toString(), out -> inflate(entry, out));
+        }
+        commit.commit();
+    }
+
+    // Stream a file's chunks through the inflater, checking its length and CRC-32
+    private void inflate(Entry entry, OutputStream out) throws IOException {
+        CRC32 crc = new CRC32();
+        long length = 0;
+        byte[] buffer = new byte[64 * 1024];
+        for (String hash : entry.chunks) {
+            Path chunk = chunks.resolve(hash);
+            if (!Files.exists(chunk)) {
+                throw new IOException("Backup is missing data for " + entry.path);
+            }
+            try (InputStream in = new InflaterInputStream(Files.newInputStream(chunk))) {
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    crc.update(buffer, 0, n);
+                    out.write(buffer, 0, n);
+                    length += n;
+                }
+            }
+        }
+        if (length != entry.size || crc.getValue() != entry.crc) {
+            throw new IOException("Backup copy of " + entry.path + " is damaged (checksum mismatch)");
+        }
+    }
+
+    /**
+     * Delete chunks that no complete backup refers to any more
+     */
+    synchronized void removeUnusedChunks() throws IOException {
+        if (!Files.isDirectory(chunks)) {
+            return;
+        }
+        Set<String> used = new HashSet<>();
+        for (Path backup : backups()) {
+            if (isIncremental(backup)) {
+                for (Entry entry : readManifestOrEmpty(backup)) {
+                    used.addAll(entry.chunks);
+                }
+            }
+        }
+        try (DirectoryStream<Path> stored = Files.newDirectoryStream(chunks)) {
+            for (Path chunk : stored) {
+                if (!used.contains(chunk.getFileName().toString())) {
+                    Files.deleteIfExists(chunk);
+                }
+            }
+        }
+    }
+
+    // Cut a file into chunks and store the ones not stored yet, synced as one group
+    private Entry storeChunks(String file, Path source, long size, long modified) throws IOException {
+        List<String> hashes = new ArrayList<>();
+        CRC32 crc = new CRC32();
+        FileGroupCommit commit = new FileGroupCommit();
+        Set<String> staged = new HashSet<>();
+        byte[] buffer = new byte[CHUNK_SIZE];
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(source))) {
+            long remaining = size;
+            while (remaining > 0) {
+                int length = (int) Math.min(CHUNK_SIZE, remaining);
+                readFully(in, buffer, length);
+                remaining -= length;
+                crc.update(buffer, 0, length);
+
+                String hash = sha256(buffer, length);
+                hashes.add(hash);
+                Path chunk = chunks.resolve(hash);
+                if (!Files.exists(chunk) && staged.add(hash)) {
+                    commit.add(chunk.toString(), deflate(buffer, length));
+                }
+            }
+        }
+        if (!commit.isEmpty()) {
+            commit.commit();
+        }
+        return new Entry(file, size, modified, crc.getValue(), hashes);
+    }
+
+    // Fastest deflate level: backups run on the checkout PC, and the data compresses well anyway
+    private static byte[] deflate(byte[] data, int length) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(length / 2 + 64);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(bytes, deflater)) {
+            out.write(data, 0, length);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    private boolean allChunksPresent(List<String> hashes) {
+        for (String hash : hashes) {
+            if (!Files.exists(chunks.resolve(hash))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Manifest of the newest complete backup, or an empty list
+    private List<Entry> latestManifest() throws IOException {
+        List<Path> backups = backups();
+        for (int i = backups.size() - 1; i >= 0; i--) {
+            List<Entry> manifest = isIncremental(backups.get(i))
+                    ? readManifestOrEmpty(backups.get(i)) : Collections.<Entry>emptyList();
+            if (!manifest.isEmpty()) {
+                return manifest;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    // An unreadable manifest makes the backup count as incomplete
+    private static List<Entry> readManifestOrEmpty(Path backup) {
+        try {
+            return readManifest(backup);
+        } catch (IOException e) {
+            System.err.println("Skipping unreadable backup " + backup.getFileName() + ": " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    // Backup directories, oldest first (the names end in a sortable timestamp)
+    private List<Path> backups() throws IOException {
+        List<Path> backups = new ArrayList<>();
+        if (Files.isDirectory(root)) {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(root, BACKUP_PREFIX + "*")) {
+                for (Path entry : entries) {
+                    if (Files.isDirectory(entry)) {
+                        backups.add(entry);
+                    }
+                }
+            }
+        }
+        Collections.sort(backups);
+        return backups;
+    }
+
+    // Staging directories of backups interrupted by a crash
+    private void removeStagingLeftovers() {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(root, STAGING_PREFIX + "*")) {
+            for (Path entry : entries) {
+                deleteStaging(entry);
+            }
+        } catch (IOException e) {
+            System.err.println("Error removing backup staging files: " + e.getMessage());
+        }
+    }
+
+    private static void deleteStaging(Path directory) {
+        try (DirectoryStream<Path> links = Files.newDirectoryStream(directory)) {
+            for (Path link : links) {
+                Files.deleteIfExists(link);
+            }
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            System.err.println("Error removing backup staging files " + directory + ": " + e.getMessage());
+        }
+    }
+
+    private static List<Entry> readManifest(Path backup) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(backup.resolve(MANIFEST_FILE)))) {
+            return DataCodec.readBackupManifest(in);
+        }
+    }
+
+    private static void readFully(InputStream in, byte[] buffer, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int n = in.read(buffer, read, length - read);
+            if (n < 0) {
+                throw new EOFException("File changed while it was backed up");
+            }
+            read += n;
+        }
+    }
+
+    private static String sha256(byte[] data, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(data, 0, length);
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Files captured by {@link #stage}; closing it removes the staging directory
+     */
+    static final class Staged implements Closeable {
+        private final Path directory;
+        private final List<StagedFile> files = new ArrayList<>();
+
+        private Staged(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        public void close() {
+            deleteStaging(directory);
+        }
+    }
+
+    // A staged link, and the path, size and modification time of the file it captured
+    private static final class StagedFile {
+        final String path;
+        final Path link;
+        final long size;
+        final long modified;
+
+        StagedFile(String path, Path link, long size, long modified) {
+            this.path = path;
+            this.link = link;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    /**
+     * One backed up file: its path relative to the data directory, the size and
+     * modification time it had, the CRC-32 of its content and the hashes of its chunks in order
+     */
+    static final class Entry {
+        final String path;
+        final long size;
+        final long modified;
+        final long crc;
+        final List<String> chunks;
+
+        Entry(String path, long size, long modified, long crc, List<String> chunks) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.crc = crc;
+            this.chunks = chunks;
+        }
+    }
+}
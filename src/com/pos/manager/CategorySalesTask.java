@@ -0,0 +1,73 @@
+package com.pos.manager;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Sales per category, in cents, over a slice of the sales columns.
+ * Categories are already small integer ids in the item column, so every leaf adds into
+ * a plain long[] indexed by that id; slices larger than the threshold are split in half
+ * and run on the fork-join pool, and the partial arrays are added together on the way back.
+ * The task reads an immutable view of the columns, so sales can continue meanwhile.
+ *
+ * The result has one slot per string id of the view, plus a last slot for lines stored
+ * without a category.
+ */
+class CategorySalesTask extends RecursiveTask<long[]> {
+
+    private static final long serialVersionUID = 1L;
+    private static final int THRESHOLD = 8192; // Transactions per leaf
+
+    private final SalesColumns.View columns;
+    private final int from;
+    private final int to;
+    private final long startKey;
+    private final long endKey;
+
+    /**
+     * Sum the rows [from, to) whose time key lies in startKey..endKey
+     */
+    CategorySalesTask(SalesColumns.View columns, int from, int to, long startKey, long endKey) {
+        this.columns = columns;
+        this.from = from;
+        this.to = to;
+        this.startKey = startKey;
+        this.endKey = endKey;
+    }
+
+    @Override
+    protected long[] compute() {
+        if (to - from <= THRESHOLD) {
+            return sumSlice();
+        }
+
+        int middle = (from + to) >>> 1;
+        CategorySalesTask left = new CategorySalesTask(columns, from, middle, startKey, endKey);
+        CategorySalesTask right = new CategorySalesTask(columns, middle, to, startKey, endKey);
+        left.fork();
+        long[] sums = right.compute();
+        long[] leftSums = left.join();
+        for (int i = 0; i < sums.length; i++) {
+            sums[i] += leftSums[i];
+        }
+        return sums;
+    }
+
+    private long[] sumSlice() {
+        int uncategorized = columns.stringCount();
+        long[] sums = new long[uncategorized + 1];
+        // Rows of a sorted view are already limited to the range by the caller
+        boolean filter = !columns.isSorted();
+        for (int row = from; row < to; row++) {
+            if (filter && !columns.inRange(row, startKey, endKey)) {
+                continue;
+            }
+            int first = columns.firstItem(row);
+            int last = first + columns.itemCount(row);
+            for (int item = first; item < last; item++) {
+                int category = columns.category(item);
+                sums[category >= 0 ? category : uncategorized] += columns.lineTotal(item);
+            }
+        }
+        return sums;
+    }
+}
@@ -0,0 +1,762 @@
+package com.pos.manager;
+
+import com.pos.model.Product;
+import com.pos.model.ProductSnapshot;
+import com.pos.model.SalesSummary;
+import com.pos.model.Transaction;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Compact, versioned binary codec for products and transactions.
+ *
+ * File layout: magic "GPOS", format version, record kind, varint record count, records.
+ * Integers are written as zig-zag varints, money stays in cents, timestamps are epoch
+ * milliseconds of the local wall-clock time, and repeated strings such as categories and
+ * payment methods are interned in a per-file string table.
+ *
+ * Version 2 stores sale lines as a reference into a per-file table of product snapshots
+ * instead of embedding a full product per line. Version 3 frames every product and
+ * transaction record with its length and a CRC-32, so a damaged record is detected and
+ * skipped while the records around it are still read (see {@link DamagedRecord});
+ * journal records carry a CRC-32 as well. Older versions are still readable.
+ */
+final class DataCodec {
+
+    static final int VERSION = 3;
+
+    private static final int CHECKED_VERSION = 3; // First version with checksummed records
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+    private static final byte[] MAGIC = {'G', 'P', 'O', 'S'};
+    private static final byte KIND_PRODUCTS = 'P';
+    private static final byte KIND_TRANSACTIONS = 'T';
+    private static final byte KIND_ROLLUPS = 'R';
+    private static final byte KIND_SEGMENT_INDEX = 'S';
+    private static final byte KIND_STRINGS = 'D';
+    private static final byte KIND_BACKUP_MANIFEST = 'B';
+
+    // First two bytes of any java.io.ObjectOutputStream stream
+    private static final int LEGACY_MAGIC = 0xACED;
+
+    private DataCodec() {
+    }
+
+    /**
+     * Check whether the stream holds data written by default Java serialization.
+     * The stream must support mark/reset; its position is left unchanged.
+     */
+    static boolean isLegacyFormat(InputStream in) throws IOException {
+        in.mark(2);
+        int first = in.read();
+        int second = in.read();
+        in.reset();
+        return first >= 0 && second >= 0 && ((first << 8) | second) == LEGACY_MAGIC;
+    }
+
+    /**
+     * Product files
+     */
+
+    static void writeProducts(OutputStream out, List<Product> products) throws IOException {
+        Writer writer = new Writer(out);
+        writer.writeHeader(KIND_PRODUCTS);
+        writer.writeVarInt(products.size());
+        for (Product product : products) {
+            writer.writeChecked(() -> writer.writeProduct(product));
+        }
+        writer.flush();
+    }
+
+    static List<Product> readProducts(InputStream in) throws IOException {
+        return readProducts(in, null);
+    }
+
+    /**
+     * Read a product file, collecting damaged records in damaged instead of failing
+     * (when damaged is null the first damaged record fails the read)
+     */
+    static List<Product> readProducts(InputStream in, List<DamagedRecord> damaged) throws IOException {
+        Reader reader = new Reader(in);
+        reader.readHeader(KIND_PRODUCTS);
+        return reader.readRecords(reader::readProduct, damaged);
+    }
+
+    /**
+     * Transaction files
+     */
+
+    static void writeTransactions(OutputStream out, List<Transaction> transactions) throws IOException {
+        Writer writer = new Writer(out);
+        writer.writeHeader(KIND_TRANSACTIONS);
+        writer.writeVarInt(transactions.size());
+        for (Transaction transaction : transactions) {
+            writer.writeChecked(() -> writer.writeTransaction(transaction));
+        }
+        writer.flush();
+    }
+
+    static List<Transaction> readTransactions(InputStream in) throws IOException {
+        return readTransactions(in, null);
+    }
+
+    /**
+     * Read a transaction file, collecting damaged records in damaged instead of failing
+     * (when damaged is null the first damaged record fails the read)
+     */
+    static List<Transaction> readTransactions(InputStream in, List<DamagedRecord> damaged) throws IOException {
+        Reader reader = new Reader(in);
+        reader.readHeader(KIND_TRANSACTIONS);
+        return reader.readRecords(reader::readTransaction, damaged);
+    }
+
+    /**
+     * Daily rollup files
+     */
+
+    static void writeRollups(OutputStream out, SalesRollups rollups) throws IOException {
+        Writer writer = new Writer(out);
+        writer.writeHeader(KIND_ROLLUPS);
+        Map<LocalDate, SalesSummary> days = rollups.allDays();
+        writer.writeVarInt(days.size());
+        for (Map.Entry<LocalDate, SalesSummary> day : days.entrySet()) {
+            SalesSummary summary = day.getValue();
+            writer.writeVarLong(day.getKey().toEpochDay());
+            writer.writeVarInt(summary.getTransactionCount());
+            writer.writeVarLong(summary.getSubtotal());
+            writer.writeVarLong(summary.getTax());
+            writer.writeVarLong(summary.getTotal());
+            Map<String, Long> byPaymentMethod = summary.getTotalsByPaymentMethod();
+            writer.writeVarInt(byPaymentMethod.size());
+            for (Map.Entry<String, Long> entry : byPaymentMethod.entrySet()) {
+                writer.writeInterned(entry.getKey());
+                writer.writeVarLong(entry.getValue());
+            }
+        }
+        writer.flush();
+    }
+
+    static SalesRollups readRollups(InputStream in) throws IOException {
+        Reader reader = new Reader(in);
+        reader.readHeader(KIND_ROLLUPS);
+        SalesRollups rollups = new SalesRollups();
+        int dayCount = reader.readVarInt();
+        for (int i = 0; i < dayCount; i++) {
+            LocalDate date = LocalDate.ofEpochDay(reader.readVarLong());
+            SalesSummary summary = new SalesSummary();
+            int transactionCount = reader.readVarInt();
+            long subtotal = reader.readVarLong();
+            long tax = reader.readVarLong();
+            summary.restore(transactionCount, subtotal, tax, reader.readVarLong());
+            int methods = reader.readVarInt();
+            for (int m = 0; m < methods; m++) {
+                String method = reader.readInterned();
+                summary.setPaymentMethodTotal(method, reader.readVarLong());
+            }
+            rollups.putDay(date, summary);
+        }
+        return rollups;
+    }
+
+    /**
+     * Transaction segment index files
+     */
+
+    static void writeSegmentIndex(OutputStream out, List<TransactionSegments.Segment> segments) throws IOException {
+        Writer writer = new Writer(out);
+        writer.writeHeader(KIND_SEGMENT_INDEX);
+        writer.writeVarInt(segments.size());
+        for (TransactionSegments.Segment segment : segments) {
+            writer.writeVarInt(segment.month.getYear());
+            writer.writeVarInt(segment.month.getMonthValue());
+            writer.writeVarInt(segment.transactionCount);
+            writer.writeVarLong(segment.total);
+            writer.writeVarInt(segment.minId);
+            writer.writeVarInt(segment.maxId);
+        }
+        writer.flush();
+    }
+
+    static List<TransactionSegments.Segment> readSegmentIndex(InputStream in) throws IOException {
+        Reader reader = new Reader(in);
+        reader.readHeader(KIND_SEGMENT_INDEX);
+        int count = reader.readVarInt();
+        List<TransactionSegments.Segment> segments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            YearMonth month = YearMonth.of(reader.readVarInt(), reader.readVarInt());
+            int transactionCount = reader.readVarInt();
+            long total = reader.readVarLong();
+            int minId = reader.readVarInt();
+            segments.add(new TransactionSegments.Segment(month, transactionCount, total, minId, reader.readVarInt()));
+        }
+        return segments;
+    }
+
+    /**
+     * String table files (used by the sales columns)
+     */
+
+    static void writeStrings(OutputStream out, List<String> strings) throws IOException {
+        Writer writer = new Writer(out);
+        writer.writeHeader(KIND_STRINGS);
+        writer.writeVarInt(strings.size());
+        for (String value : strings) {
+            writer.writeString(value);
+        }
+        writer.flush();
+    }
+
+    static List<String> readStrings(InputStream in) throws IOException {
+        Reader reader = new Reader(in);
+        reader.readHeader(KIND_STRINGS);
+        int count = reader.readVarInt();
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(reader.readString());
+        }
+        return strings;
+    }
+
+    /**
+     * Backup manifest files
+     */
+
+    static void writeBackupManifest(OutputStream out, List<BackupStore.Entry> entries) throws IOException {
+        Writer writer = new Writer(out);
+        writer.writeHeader(KIND_BACKUP_MANIFEST);
+        writer.writeVarInt(entries.size());
+        for (BackupStore.Entry entry : entries) {
+            writer.writeString(entry.path);
+            writer.writeVarLong(entry.size);
+            writer.writeVarLong(entry.modified);
+            writer.writeVarLong(entry.crc);
+            writer.writeVarInt(entry.chunks.size());
+            for (String chunk : entry.chunks) {
+                writer.writeString(chunk);
+            }
+        }
+        writer.flush();
+    }
+
+    static List<BackupStore.Entry> readBackupManifest(InputStream in) throws IOException {
+        Reader reader = new Reader(in);
+        reader.readHeader(KIND_BACKUP_MANIFEST);
+        int count = reader.readVarInt();
+        List<BackupStore.Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String path = reader.readString();
+            long size = reader.readVarLong();
+            long modified = reader.readVarLong();
+            long crc = reader.readVarLong();
+            int chunkCount = reader.readVarInt();
+            List<String> chunks = new ArrayList<>(chunkCount);
+            for (int c = 0; c < chunkCount; c++) {
+                chunks.add(reader.readString());
+            }
+            entries.add(new BackupStore.Entry(path, size, modified, crc, chunks));
+        }
+        return entries;
+    }
+
+    /**
+     * Single self-contained transaction record (used by the journal).
+     * The record starts with the format version, carries its own string table
+     * and ends with a CRC-32 of everything before it.
+     */
+    static byte[] encodeTransaction(Transaction transaction) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        Writer writer = new Writer(bytes);
+        writer.out.writeByte(VERSION);
+        writer.writeTransaction(transaction);
+        writer.out.writeInt((int) crc32(bytes.toByteArray(), bytes.size()));
+        writer.flush();
+        return bytes.toByteArray();
+    }
+
+    static Transaction decodeTransaction(byte[] record) throws IOException {
+        int length = record.length;
+        if (length > 0 && record[0] >= CHECKED_VERSION) {
+            length -= 4;
+            if (length < 1 || (int) crc32(record, length) != readInt(record, length)) {
+                throw new IOException("Transaction record is damaged (checksum mismatch)");
+            }
+        }
+        Reader reader = new Reader(new ByteArrayInputStream(record, 0, length));
+        reader.version = reader.in.readUnsignedByte();
+        reader.checkVersion();
+        return reader.readTransaction();
+    }
+
+    /**
+     * A record that failed its checksum or could not be decoded, with its raw bytes.
+     * Position is the record's index in its file.
+     */
+    static final class DamagedRecord {
+        final int position;
+        final String reason;
+        final byte[] data;
+
+        DamagedRecord(int position, String reason, byte[] data) {
+            this.position = position;
+            this.reason = reason;
+            this.data = data;
+        }
+    }
+
+    private interface RecordBody {
+        void write() throws IOException;
+    }
+
+    private interface RecordReader<T> {
+        T read() throws IOException;
+    }
+
+    private static long crc32(byte[] data, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        return crc.getValue();
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+                | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    /**
+     * Record writer with a string intern table
+     */
+    private static final class Writer {
+        private DataOutputStream out;
+        private final Map<String, Integer> internTable = new HashMap<>();
+        private final Map<ProductSnapshot, Integer> snapshotTable = new HashMap<>();
+        private final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+        private final DataOutputStream recordOut = new DataOutputStream(record);
+
+        Writer(OutputStream out) {
+            this.out = new DataOutputStream(out);
+        }
+
+        /**
+         * Write a record framed as its length, its body and a CRC-32 of the body.
+         * The body starts with the sizes of the string and snapshot tables, so a reader
+         * that skipped a damaged record knows which table entries it missed.
+         */
+        void writeChecked(RecordBody body) throws IOException {
+            DataOutputStream target = out;
+            record.reset();
+            out = recordOut;
+            try {
+                writeVarInt(internTable.size());
+                writeVarInt(snapshotTable.size());
+                body.write();
+                out.flush();
+            } finally {
+                out = target;
+            }
+            byte[] bytes = record.toByteArray();
+            writeVarInt(bytes.length);
+            out.write(bytes);
+            out.writeInt((int) crc32(bytes, bytes.length));
+        }
+
+        void writeHeader(byte kind) throws IOException {
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(kind);
+        }
+
+        void writeProduct(Product product) throws IOException {
+            writeVarInt(product.getId());
+            writeString(product.getName());
+            writeString(product.getDescription());
+            writeSignedVarInt(product.getPrice());
+            writeInterned(product.getCategory());
+            writeSignedVarInt(product.getQuantity());
+            writeSignedVarInt(product.getMinStockLevel());
+            writeString(product.getBarcode());
+            out.writeBoolean(product.isActive());
+        }
+
+        void writeTransaction(Transaction transaction) throws IOException {
+            writeVarInt(transaction.getTransactionId());
+            writeVarLong(toEpochMillis(transaction.getTimestamp()));
+            out.writeDouble(transaction.getTaxRate());
+            writeSignedVarInt(transaction.getSubtotal());
+            writeSignedVarInt(transaction.getTax());
+            writeSignedVarInt(transaction.getTotal());
+            writeSignedVarInt(transaction.getAmountPaid());
+            writeInterned(transaction.getPaymentMethod());
+            writeString(transaction.getCustomerName());
+            writeString(transaction.getNotes());
+            out.writeBoolean(transaction.isCompleted());
+
+            List<Transaction.TransactionItem> items = transaction.getItems();
+            writeVarInt(items.size());
+            for (Transaction.TransactionItem item : items) {
+                writeSnapshot(item.getSnapshot());
+                writeSignedVarInt(item.getQuantity());
+                writeSignedVarInt(item.getTotalPrice());
+            }
+        }
+
+        // 0 = new table entry followed by the snapshot, n >= 1 = table entry n - 1
+        void writeSnapshot(ProductSnapshot snapshot) throws IOException {
+            Integer index = snapshotTable.get(snapshot);
+            if (index != null) {
+                writeVarInt(index + 1);
+                return;
+            }
+            snapshotTable.put(snapshot, snapshotTable.size());
+            writeVarInt(0);
+            writeVarInt(snapshot.getProductId());
+            writeString(snapshot.getName());
+            writeSignedVarInt(snapshot.getUnitPrice());
+            writeInterned(snapshot.getCategory());
+        }
+
+        void writeVarInt(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                out.writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte(value);
+        }
+
+        void writeSignedVarInt(int value) throws IOException {
+            writeVarInt((value << 1) ^ (value >> 31));
+        }
+
+        void writeVarLong(long value) throws IOException {
+            long zigzag = (value << 1) ^ (value >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                out.writeByte((int) ((zigzag & 0x7F) | 0x80));
+                zigzag >>>= 7;
+            }
+            out.writeByte((int) zigzag);
+        }
+
+        // 0 = null, otherwise length + 1 followed by UTF-8 bytes
+        void writeString(String value) throws IOException {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length + 1);
+            out.write(bytes);
+        }
+
+        // 0 = null, 1 = new table entry followed by the string, n >= 2 = table entry n - 2
+        void writeInterned(String value) throws IOException {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+            Integer index = internTable.get(value);
+            if (index != null) {
+                writeVarInt(index + 2);
+                return;
+            }
+            internTable.put(value, internTable.size());
+            writeVarInt(1);
+            writeString(value);
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+    }
+
+    /**
+     * Record reader mirroring {@link Writer}
+     */
+    private static final class Reader {
+        private DataInputStream in;
+        // Entries defined by a damaged record are null: unknown, so records using them are damaged too
+        private final List<String> internTable = new ArrayList<>();
+        private final List<ProductSnapshot> snapshotTable = new ArrayList<>();
+        private int version;
+
+        Reader(InputStream in) {
+            this.in = new DataInputStream(in);
+        }
+
+        /**
+         * Read a record count followed by that many records. Damaged records of checked
+         * files go to damaged, or fail the read if damaged is null.
+         */
+        <T> List<T> readRecords(RecordReader<T> reader, List<DamagedRecord> damaged) throws IOException {
+            int count = readVarInt();
+            List<T> records = new ArrayList<>(Math.min(count, 1 << 16));
+            for (int i = 0; i < count; i++) {
+                if (version < CHECKED_VERSION) {
+                    records.add(reader.read());
+                    continue;
+                }
+                try {
+                    records.add(readChecked(reader));
+                } catch (DamagedRecordException e) {
+                    if (damaged == null) {
+                        throw new IOException("Record " + i + " is damaged: " + e.getMessage());
+                    }
+                    damaged.add(new DamagedRecord(i, e.getMessage(), e.data));
+                    if (e.framingLost) {
+                        break;
+                    }
+                }
+            }
+            return records;
+        }
+
+        // Read one framed record, checking its CRC before decoding it
+        private <T> T readChecked(RecordReader<T> reader) throws IOException {
+            int length;
+            byte[] data;
+            int expected;
+            try {
+                length = readVarInt();
+                if (length < 0 || length > MAX_RECORD_SIZE) {
+                    throw new IOException("Invalid record length " + length);
+                }
+                data = new byte[length];
+                in.readFully(data);
+                expected = in.readInt();
+            } catch (IOException e) {
+                // Without a trustworthy length the following records cannot be found either
+                throw new DamagedRecordException("file is truncated or its framing is damaged (" + e.getMessage()
+                        + "); the rest of the file is lost", remaining(), true);
+            }
+            if ((int) crc32(data, length) != expected) {
+                throw new DamagedRecordException("checksum mismatch", data, false);
+            }
+
+            DataInputStream file = in;
+            in = new DataInputStream(new ByteArrayInputStream(data));
+            try {
+                alignTable(internTable, readVarInt());
+                alignTable(snapshotTable, readVarInt());
+                T value = reader.read();
+                if (in.available() > 0) {
+                    throw new IOException("unexpected data after the record");
+                }
+                return value;
+            } catch (IOException e) {
+                throw new DamagedRecordException(e.getMessage(), data, false);
+            } finally {
+                in = file;
+            }
+        }
+
+        // Fill the entries a skipped record would have added with unknown (null) entries
+        private static <E> void alignTable(List<E> table, int size) throws IOException {
+            if (table.size() > size) {
+                throw new IOException("table out of step with the writer");
+            }
+            while (table.size() < size) {
+                table.add(null);
+            }
+        }
+
+        private byte[] remaining() {
+            ByteArrayOutputStream rest = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            try {
+                int n;
+                while (rest.size() < MAX_RECORD_SIZE && (n = in.read(buffer)) > 0) {
+                    rest.write(buffer, 0, n);
+                }
+            } catch (IOException e) {
+                // Keep what could be read
+            }
+            return rest.toByteArray();
+        }
+
+        void readHeader(byte expectedKind) throws IOException {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (magic[i] != MAGIC[i]) {
+                    throw new IOException("Not a GPOS data file");
+                }
+            }
+            version = in.readUnsignedByte();
+            checkVersion();
+            byte kind = in.readByte();
+            if (kind != expectedKind) {
+                throw new IOException("Unexpected record kind '" + (char) kind + "'");
+            }
+        }
+
+        void checkVersion() throws IOException {
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported data format version " + version);
+            }
+        }
+
+        Product readProduct() throws IOException {
+            Product product = new Product();
+            product.setId(readVarInt());
+            product.setName(readString());
+            product.setDescription(readString());
+            product.setPrice(readSignedVarInt());
+            product.setCategory(readInterned());
+            product.setQuantity(readSignedVarInt());
+            product.setMinStockLevel(readSignedVarInt());
+            product.setBarcode(readString());
+            product.setActive(in.readBoolean());
+            return product;
+        }
+
+        Transaction readTransaction() throws IOException {
+            Transaction transaction = new Transaction(readVarInt());
+            transaction.setTimestamp(fromEpochMillis(readVarLong()));
+            transaction.setTaxRate(in.readDouble());
+            int subtotal = readSignedVarInt();
+            int tax = readSignedVarInt();
+            int total = readSignedVarInt();
+            transaction.setAmountPaid(readSignedVarInt());
+            transaction.setPaymentMethod(readInterned());
+            transaction.setCustomerName(readString());
+            transaction.setNotes(readString());
+            transaction.setCompleted(in.readBoolean());
+
+            int itemCount = readVarInt();
+            List<Transaction.TransactionItem> items = new ArrayList<>(itemCount);
+            for (int i = 0; i < itemCount; i++) {
+                Transaction.TransactionItem item;
+                if (version == 1) {
+                    Product product = readProduct();
+                    int quantity = readSignedVarInt();
+                    int unitPrice = readSignedVarInt();
+                    item = new Transaction.TransactionItem(ProductSnapshot.of(product.getId(),
+                            product.getName(), unitPrice, product.getCategory()), quantity);
+                } else {
+                    ProductSnapshot snapshot = readSnapshot();
+                    item = new Transaction.TransactionItem(snapshot, readSignedVarInt());
+                }
+                item.setTotalPrice(readSignedVarInt());
+                items.add(item);
+            }
+
+            // Restore the stored amounts exactly rather than trusting a recalculation
+            transaction.setItems(items);
+            transaction.setSubtotal(subtotal);
+            transaction.setTax(tax);
+            transaction.setTotal(total);
+            return transaction;
+        }
+
+        ProductSnapshot readSnapshot() throws IOException {
+            int tag = readVarInt();
+            if (tag == 0) {
+                int productId = readVarInt();
+                String name = readString();
+                int unitPrice = readSignedVarInt();
+                ProductSnapshot snapshot = ProductSnapshot.of(productId, name, unitPrice, readInterned());
+                snapshotTable.add(snapshot);
+                return snapshot;
+            }
+            int index = tag - 1;
+            if (index >= snapshotTable.size()) {
+                throw new IOException("Invalid product snapshot reference " + index);
+            }
+            ProductSnapshot snapshot = snapshotTable.get(index);
+            if (snapshot == null) {
+                throw new IOException("Product snapshot " + index + " was in a damaged record");
+            }
+            return snapshot;
+        }
+
+        int readVarInt() throws IOException {
+            int result = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = in.readUnsignedByte();
+                result |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        int readSignedVarInt() throws IOException {
+            int raw = readVarInt();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        long readVarLong() throws IOException {
+            long raw = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                int b = in.readUnsignedByte();
+                raw |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return (raw >>> 1) ^ -(raw & 1);
+                }
+            }
+            throw new IOException("Malformed varlong");
+        }
+
+        String readString() throws IOException {
+            int length = readVarInt();
+            if (length == 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length - 1];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        String readInterned() throws IOException {
+            int tag = readVarInt();
+            if (tag == 0) {
+                return null;
+            }
+            if (tag == 1) {
+                String value = readString();
+                internTable.add(value);
+                return value;
+            }
+            int index = tag - 2;
+            if (index >= internTable.size()) {
+                throw new IOException("Invalid string table reference " + index);
+            }
+            String value = internTable.get(index);
+            if (value == null) {
+                throw new IOException("String " + index + " was in a damaged record");
+            }
+            return value;
+        }
+    }
+
+    private static final class DamagedRecordException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        final byte[] data;
+        final boolean framingLost;
+
+        DamagedRecordException(String message, byte[] data, boolean framingLost) {
+            super(message);
+            this.data = data;
+            this.framingLost = framingLost;
+        }
+    }
+
+    static long toEpochMillis(LocalDateTime timestamp) {
+        return timestamp.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    static LocalDateTime fromEpochMillis(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC);
+    }
+}
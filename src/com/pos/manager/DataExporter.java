@@ -0,0 +1,349 @@
+package com.pos.manager;
+
+import com.pos.model.Product;
+import com.pos.model.Transaction;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams products, transactions or sale lines to CSV or JSON Lines, optionally gzipped.
+ *
+ * Transactions are read one month at a time and written row by row through a 64 KiB
+ * buffer straight to the file channel, so memory use depends on the largest month and
+ * not on the length of the history. Money is written in currency units with two
+ * decimals, timestamps in ISO-8601, and every file starts with the same columns
+ * (a CSV header row, or the keys of each JSON object).
+ */
+class DataExporter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int PROGRESS_INTERVAL = 1000; // Rows between progress and cancellation checks
+
+    private static final String[] PRODUCT_COLUMNS = {
+        "id", "name", "description", "price", "category", "quantity", "min_stock_level", "barcode", "active"
+    };
+    private static final String[] TRANSACTION_COLUMNS = {
+        "id", "timestamp", "item_count", "subtotal", "tax", "total", "amount_paid",
+        "payment_method", "customer_name", "notes"
+    };
+    private static final String[] LINE_ITEM_COLUMNS = {
+        "transaction_id", "timestamp", "line", "product_id", "product_name", "category",
+        "quantity", "unit_price", "line_total"
+    };
+
+    /**
+     * Source of the transactions of one month within the export range, oldest first
+     */
+    interface MonthReader {
+        List<Transaction> read(YearMonth month) throws IOException;
+    }
+
+    private final ExportOptions options;
+
+    DataExporter(ExportOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * Write the export to filePath. Returns false if it was cancelled, in which case
+     * the partial file is deleted; a failed export throws and also deletes it.
+     */
+    boolean export(Path filePath, List<Product> products, List<YearMonth> months, MonthReader reader,
+                   TaskProgress progress) throws IOException {
+        boolean completed = false;
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+            if (options.isGzip()) {
+                out = new GZIPOutputStream(out, BUFFER_SIZE);
+            }
+            try (Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+                RowWriter rows = options.getFormat() == ExportOptions.Format.CSV
+                        ? new CsvRowWriter(writer, columnsOf(options.getDataset()))
+                        : new JsonRowWriter(writer, columnsOf(options.getDataset()));
+                rows.begin();
+                if (options.getDataset() == ExportOptions.Dataset.PRODUCTS) {
+                    completed = writeProducts(rows, products, progress);
+                } else {
+                    completed = writeTransactions(rows, months, reader, progress);
+                }
+            }
+        } finally {
+            if (!completed) {
+                Files.deleteIfExists(filePath);
+            }
+        }
+        progress.setPercent(100);
+        return completed;
+    }
+
+    private static String[] columnsOf(ExportOptions.Dataset dataset) {
+        switch (dataset) {
+            case PRODUCTS:
+                return PRODUCT_COLUMNS;
+            case LINE_ITEMS:
+                return LINE_ITEM_COLUMNS;
+            case TRANSACTIONS:
+            default:
+                return TRANSACTION_COLUMNS;
+        }
+    }
+
+    private static boolean writeProducts(RowWriter rows, List<Product> products, TaskProgress progress) throws IOException {
+        for (int i = 0; i < products.size(); i++) {
+            if (i % PROGRESS_INTERVAL == 0) {
+                if (progress.isCancelled()) return false;
+                progress.setPercent(i * 100 / products.size());
+            }
+            Product product = products.get(i);
+            rows.number(product.getId());
+            rows.string(product.getName());
+            rows.string(product.getDescription());
+            rows.money(product.getPrice());
+            rows.string(product.getCategory());
+            rows.number(product.getQuantity());
+            rows.number(product.getMinStockLevel());
+            rows.string(product.getBarcode());
+            rows.bool(product.isActive());
+            rows.endRow();
+        }
+        return !progress.isCancelled();
+    }
+
+    private boolean writeTransactions(RowWriter rows, List<YearMonth> months, MonthReader reader,
+                                      TaskProgress progress) throws IOException {
+        boolean lineItems = options.getDataset() == ExportOptions.Dataset.LINE_ITEMS;
+        for (int m = 0; m < months.size(); m++) {
+            if (progress.isCancelled()) return false;
+            progress.setPercent(m * 100 / months.size());
+
+            List<Transaction> monthTransactions = reader.read(months.get(m));
+            for (int i = 0; i < monthTransactions.size(); i++) {
+                if (i % PROGRESS_INTERVAL == 0 && progress.isCancelled()) return false;
+                Transaction transaction = monthTransactions.get(i);
+                if (lineItems) {
+                    writeLineItems(rows, transaction);
+                } else {
+                    writeTransaction(rows, transaction);
+                }
+            }
+        }
+        return !progress.isCancelled();
+    }
+
+    private static void writeTransaction(RowWriter rows, Transaction transaction) throws IOException {
+        rows.number(transaction.getTransactionId());
+        rows.timestamp(transaction.getTimestamp());
+        rows.number(transaction.getItemCount());
+        rows.money(transaction.getSubtotal());
+        rows.money(transaction.getTax());
+        rows.money(transaction.getTotal());
+        rows.money(transaction.getAmountPaid());
+        rows.string(transaction.getPaymentMethod());
+        rows.string(transaction.getCustomerName());
+        rows.string(transaction.getNotes());
+        rows.endRow();
+    }
+
+    private static void writeLineItems(RowWriter rows, Transaction transaction) throws IOException {
+        List<Transaction.TransactionItem> items = transaction.getItems();
+        for (int line = 0; line < items.size(); line++) {
+            Transaction.TransactionItem item = items.get(line);
+            rows.number(transaction.getTransactionId());
+            rows.timestamp(transaction.getTimestamp());
+            rows.number(line + 1);
+            rows.number(item.getProductId());
+            rows.string(item.getProductName());
+            rows.string(item.getCategory());
+            rows.number(item.getQuantity());
+            rows.money(item.getUnitPrice());
+            rows.money(item.getTotalPrice());
+            rows.endRow();
+        }
+    }
+
+    /**
+     * Writes one row at a time, field by field in column order
+     */
+    private abstract static class RowWriter {
+        final Writer out;
+        final String[] columns;
+        int column;
+
+        RowWriter(Writer out, String[] columns) {
+            this.out = out;
+            this.columns = columns;
+        }
+
+        /** Called once before the first row */
+        abstract void begin() throws IOException;
+
+        /** Start the next field; the value follows */
+        abstract void nextField() throws IOException;
+
+        /** Write a string value, which may be null */
+        abstract void string(String value) throws IOException;
+
+        abstract void endRow() throws IOException;
+
+        void number(long value) throws IOException {
+            nextField();
+            out.write(Long.toString(value));
+        }
+
+        void bool(boolean value) throws IOException {
+            nextField();
+            out.write(value ? "true" : "false");
+        }
+
+        // Cents as units with two decimals, without going through floating point
+        void money(long cents) throws IOException {
+            nextField();
+            if (cents < 0) {
+                out.write('-');
+                cents = -cents;
+            }
+            out.write(Long.toString(cents / 100));
+            out.write('.');
+            long fraction = cents % 100;
+            if (fraction < 10) {
+                out.write('0');
+            }
+            out.write(Long.toString(fraction));
+        }
+
+        void timestamp(LocalDateTime value) throws IOException {
+            string(value == null ? null : DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(value));
+        }
+    }
+
+    /**
+     * RFC 4180 CSV with a header row; fields are quoted only when they need it, nulls are empty
+     */
+    private static final class CsvRowWriter extends RowWriter {
+
+        CsvRowWriter(Writer out, String[] columns) {
+            super(out, columns);
+        }
+
+        @Override
+        void begin() throws IOException {
+            for (String name : columns) {
+                string(name);
+            }
+            endRow();
+        }
+
+        @Override
+        void nextField() throws IOException {
+            if (column++ > 0) {
+                out.write(',');
+            }
+        }
+
+        @Override
+        void string(String value) throws IOException {
+            nextField();
+            if (value == null) {
+                return;
+            }
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                out.write(value);
+                return;
+            }
+            out.write('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    out.write('"');
+                }
+                out.write(c);
+            }
+            out.write('"');
+        }
+
+        @Override
+        void endRow() throws IOException {
+            out.write("\r\n");
+            column = 0;
+        }
+    }
+
+    /**
+     * One JSON object per line, keyed by column name; nulls are written as null
+     */
+    private static final class JsonRowWriter extends RowWriter {
+
+        JsonRowWriter(Writer out, String[] columns) {
+            super(out, columns);
+        }
+
+        @Override
+        void begin() {
+        }
+
+        @Override
+        void nextField() throws IOException {
+            out.write(column == 0 ? "{\"" : ",\"");
+            out.write(columns[column++]);
+            out.write("\":");
+        }
+
+        @Override
+        void string(String value) throws IOException {
+            nextField();
+            if (value == null) {
+                out.write("null");
+                return;
+            }
+            out.write('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"':
+                        out.write("\\\"");
+                        break;
+                    case '\\':
+                        out.write("\\\\");
+                        break;
+                    case '\n':
+                        out.write("\\n");
+                        break;
+                    case '\r':
+                        out.write("\\r");
+                        break;
+                    case '\t':
+                        out.write("\\t");
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            out.write(String.format("\\u%04x", (int) c));
+                        } else {
+                            out.write(c);
+                        }
+                }
+            }
+            out.write('"');
+        }
+
+        @Override
+        void endRow() throws IOException {
+            out.write("}\n");
+            column = 0;
+        }
+    }
+}
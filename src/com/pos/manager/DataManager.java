@@ -1,13 +1,24 @@
 package com.pos.manager;
 
 import com.pos.model.Product;
+import com.pos.model.ProductSales;
+import com.pos.model.SalesSummary;
 import com.pos.model.Transaction;
 
 import java.io.*;
 import java.nio.file.*;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 
@@ -21,31 +32,163 @@ public class DataManager {
     private static final String PRODUCTS_FILE = DATA_DIR + "/products.dat";
     private static final String TRANSACTIONS_FILE = DATA_DIR + "/transactions.dat";
     private static final String SETTINGS_FILE = DATA_DIR + "/settings.dat";
+    private static final String JOURNAL_FILE = DATA_DIR + "/transactions.journal";
+    private static final String ROLLUPS_FILE = DATA_DIR + "/rollups.dat";
+    private static final String SEGMENTS_DIR = DATA_DIR + "/segments";
+    private static final String SEGMENT_INDEX_FILE = SEGMENTS_DIR + "/index.dat";
+    private static final String COLUMNS_DIR = DATA_DIR + "/columns";
     private static final String BACKUP_DIR = DATA_DIR + "/backups";
+    private static final String QUARANTINE_DIR = DATA_DIR + "/quarantine";
     private static final long AUTO_SAVE_INTERVAL_MS = 5000; // Auto-save every 5 seconds
+    private static final long SAVE_FLUSH_TIMEOUT_MS = 10000; // Longest wait for pending background saves
     private static final int MAX_BACKUPS = 10;
-
-
-    private List<Product> products;
-    private List<Transaction> transactions;
-    private Map<String, Object> settings;
+    private static final int JOURNAL_COMPACT_THRESHOLD = 1000; // Journal records before a snapshot is compacted
+    private static final int RECENT_DAYS_LOADED = 31; // Months overlapping these last days are loaded at startup
+    private static final String UNCATEGORIZED = "Uncategorized";
+    private static final int PRODUCT_SALES_CACHE_SIZE = 16; // Date ranges kept for the top products report
+    private static final long SHUTDOWN_HISTORY_WAIT_MS = 10000; // How long shutdown waits for a history still loading
+
+
+    /*
+     * Concurrency: every change (sales, product edits, settings, loading) is made while
+     * holding the DataManager lock, so there is a single writer at a time. Readers never
+     * lock: products are an immutable catalog swapped on change, transactions are read
+     * from immutable index snapshots, rollups and settings are concurrent maps.
+     * saveData() copies what it persists under the lock and writes the files outside it.
+     *
+     * Startup is staged: settings and products are loaded in the constructor, the sales
+     * history (segments, journal, rollups) on a background thread, and the sales columns
+     * after that on the compaction thread. Every method that reads or changes the history
+     * waits for the history load first (awaitHistory()); queries read the transaction
+     * index until the columns are ready. Sales need only the journal replayed (the first,
+     * short part of the load) to get their IDs; sales recorded before the rest of the
+     * history has loaded are journaled at once and added to the index, rollups and
+     * columns when the load finishes.
+     */
+    private volatile ProductCatalog catalog = ProductCatalog.EMPTY;
+    private final ProductSearchIndex productSearch = new ProductSearchIndex(); // kept in step with the catalog
+    private final TransactionIndex transactions;
+    private final TransactionSegments segments;
+    private final Set<YearMonth> loadedMonths = ConcurrentHashMap.newKeySet(); // segments read into the index
+    private final Set<YearMonth> journaledMonths = new HashSet<>(); // months with sales not yet in their segment
+    private int dataGeneration; // changes when the whole history is replaced, so stale compactions are dropped
+    private final SalesColumns columns;
+    private final BackupStore backupStore;
+    private final Quarantine quarantine;
+    private final Map<YearMonth, TransactionSegments.Segment> verifiedSegments = new ConcurrentHashMap<>(); // index entries already checked
+    private volatile boolean columnsValid; // false if the columns could not be kept in step with the history
+    private boolean columnsRebuilding; // a rebuild is queued or running; sales meanwhile wait in the backlog
+    private final List<Transaction> columnsBacklog = new ArrayList<>();
+    private int columnsGeneration; // changes with every rebuild request, so superseded rebuilds are dropped
+    private volatile SalesRollups rollups;
+    private volatile boolean rollupsChanged; // dirty flags per data file, so saves skip unchanged files
+    private final Map<Long, ProductSalesAggregator> productSalesCache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, ProductSalesAggregator> eldest) {
+            return size() > PRODUCT_SALES_CACHE_SIZE;
+        }
+    };
+    private long productSalesCacheVersion; // index version the cached entries belong to
+    private volatile Map<String, Object> settings;
     private int nextProductId;
     private int nextTransactionId;
     private Timer autoSaveTimer;
-    private boolean dataChanged;
+    private volatile boolean productsChanged;
+    private volatile boolean settingsChanged;
+    private final Object saveLock = new Object(); // one save writes the data files at a time
+    private final PersistenceWriter persistenceWriter;
+    private final TransactionJournal journal;
+    private final ExecutorService compactionExecutor;
+    private final Object snapshotLock = new Object();
+    private boolean compactionPending;
+    private final CompletableFuture<Void> journalReady = new CompletableFuture<>(); // journal replayed, next ID known
+    private final CompletableFuture<Void> historyLoaded = new CompletableFuture<>();
+    private final List<Transaction> pendingSales = new ArrayList<>(); // recorded before the history loaded
 
 
     public DataManager() {
-        this.products = new ArrayList<>();
-        this.transactions = new ArrayList<>();
-        this.settings = new HashMap<>();
+        this.transactions = new TransactionIndex();
+        this.quarantine = new Quarantine(QUARANTINE_DIR);
+        this.segments = new TransactionSegments(SEGMENTS_DIR, SEGMENT_INDEX_FILE, quarantine);
+        this.columns = new SalesColumns(COLUMNS_DIR);
+        this.backupStore = new BackupStore(BACKUP_DIR);
+        this.rollups = new SalesRollups();
+        this.settings = new ConcurrentHashMap<>();
         this.nextProductId = 1;
         this.nextTransactionId = 1;
-        this.dataChanged = false;
+        this.journal = new TransactionJournal(JOURNAL_FILE, quarantine);
+        this.compactionExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "pos-journal-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.persistenceWriter = new PersistenceWriter(this::saveData);
 
         initializeDataDirectory();
-        loadData();
+        loadSettings();
+        loadProducts();
         startAutoSave();
+        loadHistoryAsync();
+    }
+
+    /**
+     * Load the sales history on a background thread, so the till can be used while it loads
+     */
+    private void loadHistoryAsync() {
+        Thread loader = new Thread(() -> {
+            try {
+                synchronized (snapshotLock) {
+                    loadTransactions();
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Error loading sales history: " + e.getMessage());
+            } finally {
+                journalReady.complete(null);
+                finishHistoryLoad();
+            }
+        }, "pos-history-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Add the sales recorded while the history loaded, then let everything waiting for it go.
+     * Done under the lock, so every sale is either among these or recorded after the switch.
+     */
+    private synchronized void finishHistoryLoad() {
+        if (historyLoaded.isDone()) {
+            return;
+        }
+        for (Transaction transaction : pendingSales) {
+            addToHistory(transaction);
+        }
+        pendingSales.clear();
+        historyLoaded.complete(null);
+        if (journal.getRecordCount() >= JOURNAL_COMPACT_THRESHOLD) {
+            compactJournalAsync();
+        }
+    }
+
+    /**
+     * Whether the sales history has finished loading
+     */
+    public boolean isHistoryLoaded() {
+        return historyLoaded.isDone();
+    }
+
+    /**
+     * Run an action on a background thread once the sales history has loaded
+     * (at once if it already has)
+     */
+    public void whenHistoryLoaded(Runnable action) {
+        historyLoaded.thenRunAsync(action);
+    }
+
+    /**
+     * Block until the sales history has loaded
+     */
+    private void awaitHistory() {
+        historyLoaded.join();
     }
 
 
@@ -56,6 +199,7 @@ public class DataManager {
         try {
             Files.createDirectories(Paths.get(DATA_DIR));
             Files.createDirectories(Paths.get(BACKUP_DIR));
+            Files.createDirectories(Paths.get(SEGMENTS_DIR));
         } catch (IOException e) {
             System.err.println("Failed to create data directory: " + e.getMessage());
         }
@@ -69,8 +213,8 @@ public class DataManager {
         autoSaveTimer.scheduleAtFixedRate(new TimerTask() {
             @Override
             public void run() {
-                if (dataChanged) {
-                    saveData();
+                if (hasUnsavedChanges()) {
+                    requestSave();
                 }
             }
         }, AUTO_SAVE_INTERVAL_MS, AUTO_SAVE_INTERVAL_MS);
@@ -87,20 +231,33 @@ public class DataManager {
 
 
     /**
-     * Create backup of all data files
+     * Create an incremental backup of all data files.
+     * Only data changed since the previous backup is stored again (see {@link BackupStore}).
+     * If the backup fails its partly written directory is removed and the error thrown.
      */
-    public void createBackup() {
+    public void createBackup() throws IOException {
+        awaitHistory();
+        // Back up what has been changed so far, not what the last save happened to write
+        flushPendingSaves();
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+        Path backupPath = Paths.get(BACKUP_DIR, "backup_" + timestamp);
         try {
-            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-            String backupPath = BACKUP_DIR + "/backup_" + timestamp;
-
-            // Create backup directory
-            Files.createDirectories(Paths.get(backupPath));
-
-            // Copy all data files to backup
-            copyFile(PRODUCTS_FILE, backupPath + "/products.dat");
-            copyFile(TRANSACTIONS_FILE, backupPath + "/transactions.dat");
-            copyFile(SETTINGS_FILE, backupPath + "/settings.dat");
+            // Segments are only rewritten by compaction, which holds snapshotLock, and the
+            // other files by saves, which hold saveLock; the journal lock holds up appends.
+            // They are held only while the files are linked, not while the backup is written.
+            BackupStore.Staged staged;
+            synchronized (snapshotLock) {
+                synchronized (saveLock) {
+                    synchronized (journal) {
+                        staged = backupStore.stage(Paths.get(DATA_DIR), backedUpFiles());
+                    }
+                }
+            }
+            try {
+                backupStore.create(staged, backupPath);
+            } finally {
+                staged.close();
+            }
 
             // Clean up old backups
             cleanupOldBackups();
@@ -108,9 +265,43 @@ public class DataManager {
             System.out.println("Data backup created: " + backupPath);
         } catch (IOException e) {
             System.err.println("Failed to create backup: " + e.getMessage());
+            deleteDirectory(backupPath.toFile());
+            throw e;
         }
     }
 
+    /**
+     * Data files included in a backup, relative to the data directory
+     */
+    private List<String> backedUpFiles() {
+        List<String> files = new ArrayList<>(Arrays.asList("products.dat", "settings.dat"));
+        File[] segmentFiles = new File(SEGMENTS_DIR).listFiles(File::isFile);
+        if (segmentFiles != null) {
+            for (File file : segmentFiles) {
+                if (!file.getName().endsWith(".tmp")) {
+                    files.add("segments/" + file.getName());
+                }
+            }
+        }
+        files.add("transactions.journal.compacting");
+        files.add("transactions.journal");
+        return files;
+    }
+
+    /**
+     * Whether a backup directory without a manifest holds a full copy made by an earlier
+     * version; a directory left by a backup that never finished holds neither
+     */
+    private static boolean isLegacyBackup(Path backup) {
+        for (String file : Arrays.asList("products.dat", "transactions.dat", "settings.dat",
+                                         "transactions.journal", "transactions.journal.compacting")) {
+            if (Files.isRegularFile(backup.resolve(file))) {
+                return true;
+            }
+        }
+        return Files.isDirectory(backup.resolve("segments"));
+    }
+
     /**
      * Copy file utility method
      */
@@ -121,6 +312,20 @@ public class DataManager {
         }
     }
 
+    /**
+     * Copy the files (not subdirectories) of a directory, if it exists
+     */
+    private void copyDirectory(String source, String destination) throws IOException {
+        File[] files = new File(source).listFiles(File::isFile);
+        if (files == null) {
+            return;
+        }
+        Files.createDirectories(Paths.get(destination));
+        for (File file : files) {
+            copyFile(file.getPath(), destination + "/" + file.getName());
+        }
+    }
+
     /**
      * Clean up old backup files
      */
@@ -137,6 +342,7 @@ public class DataManager {
                     deleteDirectory(backups[i]);
                 }
             }
+            backupStore.removeUnusedChunks();
         } catch (Exception e) {
             System.err.println("Failed to cleanup old backups: " + e.getMessage());
         }
@@ -162,26 +368,58 @@ public class DataManager {
     }
 
     /**
-     * Restore data from backup
+     * Restore data from backup.
+     * Nothing is changed if the backup is incomplete or the current data cannot be backed up first.
      */
     public boolean restoreFromBackup(String backupPath) {
+        awaitHistory();
         try {
             Path sourceDir = Paths.get(backupPath);
             if (!Files.exists(sourceDir)) {
                 return false;
             }
+            if (!BackupStore.isIncremental(sourceDir) && !isLegacyBackup(sourceDir)) {
+                System.err.println("Failed to restore from backup: " + backupPath + " is incomplete");
+                return false;
+            }
 
             // Create backup before restore
             createBackup();
 
-            // Copy files from backup
-            copyFile(backupPath + "/products.dat", PRODUCTS_FILE);
-            copyFile(backupPath + "/transactions.dat", TRANSACTIONS_FILE);
-            copyFile(backupPath + "/settings.dat", SETTINGS_FILE);
+            // Holding saveLock keeps a background save from writing over the restored files
+            synchronized (snapshotLock) {
+                synchronized (saveLock) {
+                    // Replace the live journal and history with the backed up ones
+                    boolean incremental = BackupStore.isIncremental(sourceDir);
+                    if (incremental) {
+                        backupStore.verify(sourceDir);
+                    }
+                    journal.reset();
+                    segments.delete();
+                    Files.deleteIfExists(Paths.get(TRANSACTIONS_FILE));
+                    if (incremental) {
+                        backupStore.restore(sourceDir, Paths.get(DATA_DIR));
+                    } else {
+                        // Full copies made by earlier versions; a transactions.dat is migrated on load
+                        copyFile(backupPath + "/products.dat", PRODUCTS_FILE);
+                        copyFile(backupPath + "/transactions.dat", TRANSACTIONS_FILE);
+                        copyDirectory(backupPath + "/segments", SEGMENTS_DIR);
+                        copyFile(backupPath + "/settings.dat", SETTINGS_FILE);
+                        copyFile(backupPath + "/transactions.journal.compacting", JOURNAL_FILE + ".compacting");
+                        copyFile(backupPath + "/transactions.journal", JOURNAL_FILE);
+                    }
 
-            // Reload data
-            loadData();
-            dataChanged = false;
+                    // Reload data; the columns describe the replaced history, so they are refilled
+                    synchronized (this) {
+                        if (columnsValid) {
+                            columns.reset();
+                        }
+                        loadData();
+                        productsChanged = false;
+                        settingsChanged = false;
+                    }
+                }
+            }
 
             return true;
         } catch (IOException e) {
@@ -226,31 +464,116 @@ public class DataManager {
 
 
     /**
-     * Save all data to files
+     * Save all data to files.
+     * Transactions are not rewritten here: each sale is already durable in the journal
+     * and the snapshot is compacted in the background.
+     * The data is copied under the lock and written outside it, so a save never holds up
+     * a sale for longer than the copy; changes made meanwhile are picked up by the next save.
+     * saveLock is held from the copy to the end of the write, so saves commit in the order
+     * they copied and an older copy never lands over a newer one.
+     * Only the files whose data changed since the last save are written, each replaced
+     * atomically and all synced in one round.
      */
     public void saveData() {
+        synchronized (saveLock) {
+            writeChangedFiles();
+        }
+    }
+
+    private void writeChangedFiles() {
+        FileGroupCommit commit = new FileGroupCommit();
+        boolean savesProducts;
+        boolean savesSettings;
+        boolean savesRollups;
+        synchronized (this) {
+            savesProducts = productsChanged;
+            savesSettings = settingsChanged;
+            savesRollups = rollupsChanged;
+            try {
+                if (savesProducts) {
+                    commit.add(PRODUCTS_FILE, encodeProducts());
+                }
+                if (savesSettings) {
+                    commit.add(SETTINGS_FILE, encodeSettings());
+                }
+            } catch (IOException e) {
+                System.err.println("Error saving data: " + e.getMessage());
+                return;
+            }
+            if (savesRollups) {
+                // Copied under the lock, so the file holds the rollups as of one sale
+                SalesRollups rollupsSnapshot = rollups.copy();
+                commit.add(ROLLUPS_FILE, out -> DataCodec.writeRollups(out, rollupsSnapshot));
+            }
+            productsChanged = false;
+            settingsChanged = false;
+            rollupsChanged = false;
+        }
+        if (commit.isEmpty()) {
+            return;
+        }
+
         try {
-            saveProducts();
-            saveTransactions();
-            saveSettings();
-            dataChanged = false;
-        } catch (Exception e) {
+            commit.commit();
+        } catch (IOException e) {
             System.err.println("Error saving data: " + e.getMessage());
+            // Retry with the next save
+            synchronized (this) {
+                if (savesProducts) productsChanged = true;
+                if (savesSettings) settingsChanged = true;
+                if (savesRollups) rollupsChanged = true;
+            }
+        }
+    }
+
+    /**
+     * Save in the background, returning at once.
+     * Requests made close together are combined into a single save.
+     */
+    public void requestSave() {
+        persistenceWriter.requestSave();
+    }
+
+    /**
+     * Wait until every save requested so far has been written
+     */
+    private void flushPendingSaves() {
+        if (!persistenceWriter.flush(SAVE_FLUSH_TIMEOUT_MS)) {
+            System.err.println("Timed out waiting for pending saves");
         }
     }
 
+    /**
+     * Whether any data file is out of date
+     */
+    private boolean hasUnsavedChanges() {
+        return productsChanged || settingsChanged || rollupsChanged;
+    }
+
     /**
      * Product Management Methods
      */
 
     private void loadProducts() {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(PRODUCTS_FILE))) {
-            @SuppressWarnings("unchecked")
-            List<Product> loadedProducts = (List<Product>) ois.readObject();
-            this.products = loadedProducts != null ? loadedProducts : new ArrayList<>();
+        boolean migrate = false;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(PRODUCTS_FILE))) {
+            List<Product> loadedProducts;
+            if (DataCodec.isLegacyFormat(in)) {
+                loadedProducts = readLegacyList(in);
+                migrate = true;
+            } else {
+                List<DataCodec.DamagedRecord> damaged = new ArrayList<>();
+                loadedProducts = DataCodec.readProducts(in, damaged);
+                for (DataCodec.DamagedRecord record : damaged) {
+                    quarantine.add(Paths.get(PRODUCTS_FILE).getFileName().toString(), "record-" + record.position,
+                            record.reason, record.data);
+                }
+            }
+            catalog = new ProductCatalog(loadedProducts != null ? loadedProducts : new ArrayList<>());
+            productSearch.rebuild(catalog.products());
 
             // Find the highest product ID for nextProductId
-            this.nextProductId = products.stream()
+            this.nextProductId = catalog.products().stream()
                     .mapToInt(Product::getId)
                     .max()
                     .orElse(0) + 1;
@@ -260,83 +583,131 @@ public class DataManager {
             initializeSampleProducts();
         } catch (IOException | ClassNotFoundException e) {
             System.err.println("Error loading products: " + e.getMessage());
-            this.products = new ArrayList<>();
+            catalog = ProductCatalog.EMPTY;
+            productSearch.rebuild(catalog.products());
+        }
+
+        if (migrate) {
+            System.out.println("Migrating products to binary format...");
+            preserveLegacyFile(PRODUCTS_FILE);
+            saveProducts();
         }
     }
 
+    // Encoded under saveLock as well, so it cannot commit before a save that copied earlier
     private void saveProducts() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(PRODUCTS_FILE))) {
-            oos.writeObject(products);
+        try {
+            synchronized (saveLock) {
+                byte[] productData = encodeProducts();
+                new FileGroupCommit().add(PRODUCTS_FILE, productData).commit();
+            }
         } catch (IOException e) {
             System.err.println("Error saving products: " + e.getMessage());
         }
     }
 
+    // Products are never changed once in the catalog, so one catalog is encoded as it stood
+    private byte[] encodeProducts() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataCodec.writeProducts(out, catalog.products());
+        return out.toByteArray();
+    }
+
+    /**
+     * Read a list written by the pre-codec Java serialization format
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> readLegacyList(InputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream ois = new ObjectInputStream(in);
+        return (List<T>) ois.readObject();
+    }
+
+    /**
+     * Keep a copy of a legacy data file before it is rewritten in the binary format
+     */
+    private void preserveLegacyFile(String file) {
+        try {
+            Path legacyCopy = Paths.get(file + ".legacy");
+            if (!Files.exists(legacyCopy)) {
+                Files.copy(Paths.get(file), legacyCopy);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to preserve legacy data file " + file + ": " + e.getMessage());
+        }
+    }
+
 
     private void initializeSampleProducts() {
-        products.addAll(Arrays.asList(
+        List<Product> sampleProducts = new ArrayList<>(catalog.products());
+        sampleProducts.addAll(Arrays.asList(
             new Product(1, "Coffee", "Fresh brewed coffee", 250, "Beverages", 100, 10, "COF001"),
             new Product(2, "Sandwich", "Ham and cheese sandwich", 599, "Food", 50, 5, "SAN001"),
             new Product(3, "Notebook", "Spiral bound notebook", 350, "Stationery", 25, 3, "NOT001"),
             new Product(4, "Water Bottle", "500ml mineral water", 150, "Beverages", 200, 20, "WAT001"),
             new Product(5, "Chocolate Bar", "Milk chocolate bar", 199, "Snacks", 75, 10, "CHO001")
         ));
+        catalog = new ProductCatalog(sampleProducts);
+        productSearch.rebuild(catalog.products());
         nextProductId = 6;
         saveProducts();
     }
 
     public List<Product> getAllProducts() {
-        return new ArrayList<>(products);
+        return new ArrayList<>(catalog.products());
     }
 
     public List<Product> getProductsByCategory(String category) {
         if (category == null || category.isEmpty()) {
             return getAllProducts();
         }
-        return products.stream()
-                .filter(p -> category.equals(p.getCategory()))
-                .collect(Collectors.toList());
+        return new ArrayList<>(catalog.inCategory(category));
     }
 
+    /**
+     * The distinct product categories, sorted; the list is shared and unmodifiable
+     */
     public List<String> getAllCategories() {
-        return products.stream()
-                .map(Product::getCategory)
-                .filter(Objects::nonNull)
-                .distinct()
-                .sorted()
-                .collect(Collectors.toList());
+        return catalog.categories();
+    }
+
+    /**
+     * Number of products in each category, in category order
+     */
+    public Map<String, Integer> getCategoryCounts() {
+        ProductCatalog current = catalog;
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (String category : current.categories()) {
+            counts.put(category, current.inCategory(category).size());
+        }
+        return counts;
     }
 
     public Product getProductById(int id) {
-        return products.stream()
-                .filter(p -> p.getId() == id)
-                .findFirst()
-                .orElse(null);
+        return catalog.byId(id);
     }
 
     public Product getProductByBarcode(String barcode) {
-        return products.stream()
-                .filter(p -> barcode.equals(p.getBarcode()))
-                .findFirst()
-                .orElse(null);
+        return catalog.byBarcode(barcode);
     }
 
     public List<Product> searchProducts(String searchTerm) {
+        return searchProducts(searchTerm, null);
+    }
+
+    /**
+     * Products whose ID, name, description or barcode contains the search term (ignoring case),
+     * in ID order, limited to a category unless category is null or empty.
+     * An empty search term returns the products of the category in catalog order.
+     */
+    public List<Product> searchProducts(String searchTerm, String category) {
         if (searchTerm == null || searchTerm.trim().isEmpty()) {
-            return getAllProducts();
+            return getProductsByCategory(category);
         }
-
-        String lowerSearchTerm = searchTerm.toLowerCase();
-        return products.stream()
-                .filter(p -> String.valueOf(p.getId()).contains(lowerSearchTerm) ||
-                           p.getName().toLowerCase().contains(lowerSearchTerm) ||
-                           (p.getDescription() != null && p.getDescription().toLowerCase().contains(lowerSearchTerm)) ||
-                           (p.getBarcode() != null && p.getBarcode().toLowerCase().contains(lowerSearchTerm)))
-                .collect(Collectors.toList());
+        return productSearch.search(searchTerm, category == null || category.isEmpty() ? null : category);
     }
 
 
-    public boolean addProduct(Product product) {
+    public synchronized boolean addProduct(Product product) {
         if (product == null) return false;
 
         if (product.getId() == 0) {
@@ -346,31 +717,46 @@ public class DataManager {
                 nextProductId = product.getId() + 1;
             }
         }
-        boolean added = products.add(product);
-        if (added) {
-            dataChanged = true;
-        }
-        return added;
+        catalog = catalog.with(product);
+        productSearch.put(product);
+        productsChanged = true;
+        return true;
     }
 
 
-    public boolean updateProduct(Product updatedProduct) {
+    /**
+     * Replace the product with the same ID by updatedProduct. Products in the catalog are
+     * read without locking, so an edit is made on a new instance passed here rather than
+     * on the catalog's own; sales replace products with new stock counts the same way.
+     */
+    public synchronized boolean updateProduct(Product updatedProduct) {
         if (updatedProduct == null) return false;
 
-        for (int i = 0; i < products.size(); i++) {
-            if (products.get(i).getId() == updatedProduct.getId()) {
-                products.set(i, updatedProduct);
-                dataChanged = true;
-                return true;
-            }
+        if (catalog.byId(updatedProduct.getId()) == null) {
+            return false;
         }
-        return false;
+
+        catalog = catalog.replacing(updatedProduct);
+        productSearch.put(updatedProduct);
+        productsChanged = true;
+        return true;
+    }
+
+    // A new instance of the product with another ID or stock count
+    private static Product copyOf(Product product, int id, int quantity) {
+        Product copy = new Product(id, product.getName(), product.getDescription(), product.getPrice(),
+                product.getCategory(), quantity, product.getMinStockLevel(), product.getBarcode());
+        copy.setActive(product.isActive());
+        return copy;
     }
 
-    public boolean deleteProduct(int productId) {
-        boolean removed = products.removeIf(p -> p.getId() == productId);
+    public synchronized boolean deleteProduct(int productId) {
+        ProductCatalog updated = catalog.without(productId);
+        boolean removed = updated.size() != catalog.size();
         if (removed) {
-            dataChanged = true;
+            catalog = updated;
+            productSearch.remove(productId);
+            productsChanged = true;
         }
         return removed;
     }
@@ -379,86 +765,600 @@ public class DataManager {
      * Transaction Management Methods
      */
 
+    /**
+     * Load the segment index and the recent months of history. Older months are read
+     * when a query first reaches them (see {@link #loadSegments}). The stored rollups are
+     * read in parallel with the segments.
+     */
     private void loadTransactions() {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(TRANSACTIONS_FILE))) {
-            @SuppressWarnings("unchecked")
-            List<Transaction> loadedTransactions = (List<Transaction>) ois.readObject();
-            this.transactions = loadedTransactions != null ? loadedTransactions : new ArrayList<>();
+        CompletableFuture<SalesRollups> storedRollups = CompletableFuture.supplyAsync(DataManager::readRollups);
+        transactions.clear();
+        loadedMonths.clear();
+        journaledMonths.clear();
+        dataGeneration++;
+
+        if (segments.exists()) {
+            try {
+                segments.loadIndex();
+                YearMonth firstRecent = YearMonth.from(LocalDate.now().minusDays(RECENT_DAYS_LOADED));
+                loadSegments(segments.segments().tailMap(firstRecent, true).keySet());
+            } catch (IOException e) {
+                System.err.println("Error loading transactions: " + e.getMessage());
+            }
+        } else {
+            migrateTransactionFile();
+        }
+
+        List<Transaction> journaled;
+        synchronized (this) {
+            journaled = replayJournal();
 
             // Find the highest transaction ID
-            this.nextTransactionId = transactions.stream()
+            this.nextTransactionId = Math.max(segments.maxTransactionId(), transactions.all().stream()
                     .mapToInt(Transaction::getTransactionId)
                     .max()
-                    .orElse(0) + 1;
+                    .orElse(0)) + 1;
+        }
+        // Sales can be recorded from here on; the rest of the load does not change their IDs
+        journalReady.complete(null);
+
+        loadRollups(storedRollups.join(), journaled);
+        loadColumns();
+    }
 
+    /**
+     * Split a single transactions.dat (binary or Java serialized) into monthly segments.
+     * The old file is kept as a .legacy copy.
+     */
+    private void migrateTransactionFile() {
+        List<Transaction> loadedTransactions = Collections.emptyList();
+        boolean found = false;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(TRANSACTIONS_FILE))) {
+            found = true;
+            if (DataCodec.isLegacyFormat(in)) {
+                loadedTransactions = readLegacyList(in);
+            } else {
+                loadedTransactions = DataCodec.readTransactions(in);
+            }
+            if (loadedTransactions == null) {
+                loadedTransactions = Collections.emptyList();
+            }
         } catch (FileNotFoundException e) {
-            this.transactions = new ArrayList<>();
+            // New installation
         } catch (IOException | ClassNotFoundException e) {
             System.err.println("Error loading transactions: " + e.getMessage());
-            this.transactions = new ArrayList<>();
+            return;
+        }
+
+        try {
+            if (found) {
+                System.out.println("Migrating transactions to monthly segments...");
+            }
+            segments.replaceAll(loadedTransactions);
+            if (found) {
+                preserveLegacyFile(TRANSACTIONS_FILE);
+                Files.delete(Paths.get(TRANSACTIONS_FILE));
+            }
+        } catch (IOException e) {
+            System.err.println("Error saving transactions: " + e.getMessage());
+        }
+        transactions.addAll(loadedTransactions);
+        loadedMonths.addAll(segments.segments().keySet());
+    }
+
+    /**
+     * Read the given months into the index unless they are already there.
+     * Transactions already in the index (e.g. replayed from the journal) are not added twice.
+     */
+    private void loadSegments(Collection<YearMonth> months) {
+        List<YearMonth> missing = new ArrayList<>();
+        for (YearMonth month : months) {
+            if (!loadedMonths.contains(month)) {
+                missing.add(month);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        synchronized (snapshotLock) {
+            // Months are read and decoded in parallel, then added to the index in one go
+            Map<YearMonth, List<Transaction>> read = new ConcurrentHashMap<>();
+            missing.parallelStream()
+                .filter(month -> !loadedMonths.contains(month) && segments.segments().containsKey(month))
+                .forEach(month -> {
+                    try {
+                        read.put(month, segments.read(month));
+                    } catch (IOException e) {
+                        System.err.println("Error loading transactions for " + month + ": " + e.getMessage());
+                    }
+                });
+
+            List<Transaction> loaded = new ArrayList<>();
+            for (Map.Entry<YearMonth, List<Transaction>> entry : read.entrySet()) {
+                for (Transaction transaction : entry.getValue()) {
+                    if (transactions.getById(transaction.getTransactionId()) == null) {
+                        loaded.add(transaction);
+                    }
+                }
+            }
+            transactions.addAll(loaded);
+            loadedMonths.addAll(read.keySet());
+        }
+    }
+
+    /**
+     * Make sure the months covering start..end (either bound may be null) are in the index
+     */
+    private void loadSegments(LocalDateTime start, LocalDateTime end) {
+        NavigableMap<YearMonth, TransactionSegments.Segment> stored = segments.segments();
+        if (stored.isEmpty()) {
+            return;
+        }
+        YearMonth from = start != null ? YearMonth.from(start) : stored.firstKey();
+        YearMonth to = end != null ? YearMonth.from(end) : stored.lastKey();
+        if (from.isAfter(to)) {
+            return;
+        }
+        loadSegments(stored.subMap(from, true, to, true).keySet());
+    }
+
+    /**
+     * Read the persisted daily rollups, or null if there are none
+     */
+    private static SalesRollups readRollups() {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(ROLLUPS_FILE))) {
+            return DataCodec.readRollups(in);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            System.err.println("Error loading sales rollups: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Use the persisted daily rollups. Sales are folded into the rollups in the order they
+     * are journaled and the rollups are saved as of one sale, so after an unclean shutdown
+     * the saved rollups lack only the last few journaled sales; those are added to them.
+     * The rollups are rebuilt from the whole history only when the file is missing or
+     * still does not match (damaged, or from before a restore).
+     */
+    private void loadRollups(SalesRollups loaded, List<Transaction> journaled) {
+        // Months not loaded yet are counted from the segment index
+        long count = transactions.size();
+        long total = transactions.sumTotals(null, null);
+        for (TransactionSegments.Segment segment : segments.segments().values()) {
+            if (!loadedMonths.contains(segment.month)) {
+                count += segment.transactionCount;
+                total += segment.total;
+            }
+        }
+
+        if (loaded == null) {
+            rebuildRollups();
+            return;
+        }
+        long missing = count - loaded.getTransactionCount();
+        if (missing == 0 && loaded.getGrandTotal() == total) {
+            rollups = loaded;
+            rollupsChanged = false;
+            return;
+        }
+
+        // The sales recorded after the rollups were saved are the tail of the journal
+        if (missing > 0 && missing <= journaled.size()) {
+            List<Transaction> unsaved = journaled.subList(journaled.size() - (int) missing, journaled.size());
+            long unsavedTotal = 0;
+            for (Transaction transaction : unsaved) {
+                unsavedTotal += transaction.getTotal();
+            }
+            if (loaded.getGrandTotal() + unsavedTotal == total) {
+                for (Transaction transaction : unsaved) {
+                    loaded.record(transaction);
+                }
+                rollups = loaded;
+                rollupsChanged = true;
+                return;
+            }
+        }
+        System.err.println("Sales rollups do not match the sales history, rebuilding them");
+        rebuildRollups();
+    }
+
+    /**
+     * Recompute the rollups from the index and the segments not loaded yet.
+     * Unloaded months are streamed through without being added to the index.
+     */
+    private void rebuildRollups() {
+        SalesRollups rebuilt = new SalesRollups();
+        rebuilt.rebuild(transactions.all());
+        for (YearMonth month : segments.segments().keySet()) {
+            if (loadedMonths.contains(month)) {
+                continue;
+            }
+            try {
+                for (Transaction transaction : segments.read(month)) {
+                    if (transactions.getById(transaction.getTransactionId()) == null) {
+                        rebuilt.record(transaction);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading transactions for " + month + ": " + e.getMessage());
+            }
+        }
+        rollups = rebuilt;
+        rollupsChanged = true;
+    }
+
+    /**
+     * Map the sales columns in the background, rebuilding them when they do not match the
+     * rollups (missing, written by a run that crashed, or left over from before a restore).
+     * Until then queries read the transaction index.
+     */
+    private void loadColumns() {
+        int generation = requestColumns();
+        compactionExecutor.execute(() -> {
+            try {
+                columns.open();
+            } catch (IOException e) {
+                System.err.println("Error opening sales columns: " + e.getMessage());
+                synchronized (this) {
+                    if (generation == columnsGeneration) {
+                        columnsRebuilding = false;
+                        columnsBacklog.clear();
+                    }
+                }
+                return;
+            }
+            synchronized (this) {
+                if (generation != columnsGeneration) {
+                    return;
+                }
+                // Checked under the lock, together with the sales recorded while the files were mapped
+                try {
+                    columns.append(columnsBacklog, this::resolveCategory);
+                    if (columns.matches(rollups.getTransactionCount(), rollups.getGrandTotal())) {
+                        columnsValid = true;
+                        columnsRebuilding = false;
+                        columnsBacklog.clear();
+                        return;
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error appending to sales columns: " + e.getMessage());
+                }
+            }
+            runColumnRebuild(generation);
+        });
+    }
+
+    /**
+     * Refill the sales columns from the whole history in the background
+     */
+    private void rebuildColumnsAsync() {
+        int generation = requestColumns();
+        compactionExecutor.execute(() -> runColumnRebuild(generation));
+    }
+
+    // Take the columns out of use until the work queued under the returned generation finishes
+    private synchronized int requestColumns() {
+        columnsValid = false;
+        columnsRebuilding = true;
+        columnsBacklog.clear();
+        return ++columnsGeneration;
+    }
+
+    /**
+     * Refill the sales columns from the whole history, one month at a time, on the
+     * compaction thread. Months not loaded are read from their segments without being
+     * added to the index. The history is taken as of one moment under the lock; sales
+     * recorded later are kept in a backlog and appended when the rebuild finishes.
+     * A rebuild superseded by a newer request leaves its result unused.
+     */
+    private void runColumnRebuild(int generation) {
+        Set<YearMonth> loaded;
+        TransactionIndex.Snapshot snapshot;
+        int firstBacklogId;
+        synchronized (this) {
+            if (generation != columnsGeneration) {
+                return;
+            }
+            // Months loaded before the snapshot is taken are all in it
+            loaded = new HashSet<>(loadedMonths);
+            snapshot = transactions.snapshot();
+            firstBacklogId = nextTransactionId;
+            columnsBacklog.clear();
+        }
+
+        Set<YearMonth> months = new TreeSet<>(segments.segments().keySet());
+        if (!snapshot.isEmpty()) {
+            YearMonth last = YearMonth.from(snapshot.get(snapshot.size() - 1).getTimestamp());
+            for (YearMonth month = YearMonth.from(snapshot.get(0).getTimestamp()); !month.isAfter(last); month = month.plusMonths(1)) {
+                months.add(month);
+            }
+        }
+
+        try {
+            columns.reset();
+            for (YearMonth month : months) {
+                int[] positions = snapshot.positions(month.atDay(1).atStartOfDay(), month.atEndOfMonth().atTime(LocalTime.MAX));
+                List<Transaction> monthTransactions = new ArrayList<>();
+                snapshot.forEach(positions[0], positions[1], monthTransactions::add);
+                if (!loaded.contains(month) && segments.segments().containsKey(month)) {
+                    // Sales compacted into the segment since the snapshot are in the backlog
+                    for (Transaction transaction : segments.read(month)) {
+                        if (transaction.getTransactionId() < firstBacklogId
+                                && snapshot.getById(transaction.getTransactionId()) == null) {
+                            monthTransactions.add(transaction);
+                        }
+                    }
+                    monthTransactions.sort(Comparator.comparing(Transaction::getTimestamp));
+                }
+                columns.append(monthTransactions, this::resolveCategory);
+            }
+        } catch (IOException e) {
+            System.err.println("Error rebuilding sales columns: " + e.getMessage());
+            synchronized (this) {
+                if (generation == columnsGeneration) {
+                    columnsRebuilding = false;
+                    columnsBacklog.clear();
+                }
+            }
+            return;
+        }
+
+        synchronized (this) {
+            if (generation != columnsGeneration) {
+                return;
+            }
+            try {
+                columns.append(columnsBacklog, this::resolveCategory);
+                columnsValid = true;
+            } catch (IOException e) {
+                System.err.println("Error rebuilding sales columns: " + e.getMessage());
+            }
+            columnsRebuilding = false;
+            columnsBacklog.clear();
+        }
+    }
+
+    /**
+     * The sales columns, or null while they are out of step with the history
+     */
+    private SalesColumns.View columnsView() {
+        return columnsValid ? columns.view() : null;
+    }
+
+    /**
+     * Apply journaled sales that are not yet part of the snapshot.
+     * Records already present in the snapshot (a compaction finished but the rotated
+     * journal was not removed) are skipped by transaction ID.
+     * Returns every journaled sale once, in the order they were recorded.
+     */
+    private List<Transaction> replayJournal() {
+        Map<Integer, Transaction> journaled = new LinkedHashMap<>();
+        try {
+            boolean unfinishedCompaction = journal.hasRotatedJournal();
+            for (Transaction transaction : journal.replay()) {
+                journaled.putIfAbsent(transaction.getTransactionId(), transaction);
+            }
+
+            if (!journaled.isEmpty()) {
+                List<Transaction> pending = new ArrayList<>();
+                for (Transaction transaction : journaled.values()) {
+                    journaledMonths.add(YearMonth.from(transaction.getTimestamp()));
+                    if (transactions.getById(transaction.getTransactionId()) == null) {
+                        pending.add(transaction);
+                    }
+                }
+                transactions.addAll(pending);
+            }
+
+            journal.open();
+
+            if (unfinishedCompaction || journal.getRecordCount() >= JOURNAL_COMPACT_THRESHOLD) {
+                compactJournalAsync();
+            }
+        } catch (IOException e) {
+            System.err.println("Error replaying transaction journal: " + e.getMessage());
         }
+        return new ArrayList<>(journaled.values());
     }
 
-    private void saveTransactions() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(TRANSACTIONS_FILE))) {
-            oos.writeObject(transactions);
+    /**
+     * Rewrite the segments of the given months from the index.
+     * Each segment goes to a temporary file that is synced and then renamed over the old one,
+     * followed by the segment index, so a crash never leaves a half-written segment behind.
+     * The months must be loaded.
+     */
+    private boolean writeSegments(Collection<YearMonth> months) {
+        TransactionIndex.Snapshot snapshot = transactions.snapshot();
+        Map<YearMonth, List<Transaction>> contents = new TreeMap<>();
+        for (YearMonth month : months) {
+            int[] positions = snapshot.positions(month.atDay(1).atStartOfDay(), month.atEndOfMonth().atTime(LocalTime.MAX));
+            List<Transaction> monthTransactions = new ArrayList<>(positions[1] - positions[0]);
+            snapshot.forEach(positions[0], positions[1], monthTransactions::add);
+            contents.put(month, monthTransactions);
+        }
+        try {
+            segments.write(contents);
+            loadedMonths.addAll(months);
+            return true;
         } catch (IOException e) {
             System.err.println("Error saving transactions: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Fold the journal into the segments of the months it touched, on the compaction thread.
+     * The journal is rotated under the same lock that guards appends, so the months taken
+     * cover every record in the rotated journal. The segments are written from the index
+     * afterwards; sales made since the rotation may be included as well, and are skipped
+     * by transaction ID when the live journal is replayed.
+     */
+    private void compactJournalAsync() {
+        final Set<YearMonth> months;
+        final int generation;
+        synchronized (this) {
+            if (compactionPending) return;
+            try {
+                journal.rotate();
+            } catch (IOException e) {
+                System.err.println("Error rotating transaction journal: " + e.getMessage());
+                return;
+            }
+            months = new TreeSet<>(journaledMonths);
+            journaledMonths.clear();
+            generation = dataGeneration;
+            compactionPending = true;
         }
+
+        compactionExecutor.execute(() -> {
+            boolean compacted = false;
+            try {
+                synchronized (snapshotLock) {
+                    // The history was replaced meanwhile; its own journal is compacted later
+                    if (generation == dataGeneration) {
+                        loadSegments(months);
+                        if (writeSegments(months)) {
+                            journal.discardRotated();
+                            compacted = true;
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error discarding compacted journal: " + e.getMessage());
+            } finally {
+                synchronized (DataManager.this) {
+                    if (!compacted && generation == dataGeneration) {
+                        journaledMonths.addAll(months);
+                    }
+                    compactionPending = false;
+                }
+            }
+        });
     }
 
     public List<Transaction> getAllTransactions() {
-        return new ArrayList<>(transactions);
+        awaitHistory();
+        loadSegments(null, null);
+        return transactions.all();
     }
 
+    /**
+     * Transactions with start <= timestamp <= end, newest first.
+     * Either bound may be null for an open range.
+     */
     public List<Transaction> getTransactionsByDateRange(LocalDateTime start, LocalDateTime end) {
-        return transactions.stream()
-                .filter(t -> {
-                    LocalDateTime timestamp = t.getTimestamp();
-                    return (start == null || !timestamp.isBefore(start)) &&
-                           (end == null || !timestamp.isAfter(end));
-                })
-                .sorted((t1, t2) -> t2.getTimestamp().compareTo(t1.getTimestamp()))
-                .collect(Collectors.toList());
+        awaitHistory();
+        loadSegments(start, end);
+        return transactions.range(start, end);
     }
 
     public Transaction getTransactionById(int transactionId) {
-        return transactions.stream()
-                .filter(t -> t.getTransactionId() == transactionId)
-                .findFirst()
-                .orElse(null);
+        awaitHistory();
+        Transaction transaction = transactions.getById(transactionId);
+        if (transaction == null) {
+            loadSegments(segments.monthsContaining(transactionId));
+            transaction = transactions.getById(transactionId);
+        }
+        return transaction;
+    }
+
+    /**
+     * Index snapshot that holds every transaction with start <= timestamp <= end
+     */
+    private TransactionIndex.Snapshot snapshotFor(LocalDateTime start, LocalDateTime end) {
+        loadSegments(start, end);
+        return transactions.snapshot();
     }
 
     public int getNextTransactionId() {
-        return nextTransactionId++;
+        journalReady.join();
+        synchronized (this) {
+            return nextTransactionId++;
+        }
     }
 
 
+    /**
+     * Record a completed sale. Waits only until the journal has been replayed (the next ID
+     * is known then), not for the whole history, so the till is not held up by the load.
+     */
     public boolean addTransaction(Transaction transaction) {
         if (transaction == null) return false;
+        journalReady.join();
+        return recordTransaction(transaction);
+    }
+
+    private synchronized boolean recordTransaction(Transaction transaction) {
 
-        transaction.setTransactionId(getNextTransactionId());
+        transaction.setTransactionId(nextTransactionId++);
         transaction.setTimestamp(LocalDateTime.now());
         transaction.setCompleted(true);
 
-        boolean added = transactions.add(transaction);
+        try {
+            journal.append(transaction);
+        } catch (IOException e) {
+            System.err.println("Error journaling transaction: " + e.getMessage());
+            return false;
+        }
+
+        boolean added;
+        boolean loaded = historyLoaded.isDone();
+        if (loaded) {
+            added = addToHistory(transaction);
+        } else {
+            // The rollups are not loaded yet; the sale is added with the rest of the history
+            pendingSales.add(transaction);
+            added = true;
+        }
 
-        // Update product quantities
+        // Update product quantities on copies, as readers may be holding the catalog's products
         for (Transaction.TransactionItem item : transaction.getItems()) {
-            Product product = getProductById(item.getProduct().getId());
+            Product product = getProductById(item.getProductId());
             if (product != null) {
-                product.setQuantity(product.getQuantity() - item.getQuantity());
-                updateProduct(product);
+                Product sold = copyOf(product, product.getId(), product.getQuantity() - item.getQuantity());
+                catalog = catalog.replacing(sold);
+                productSearch.put(sold);
+                productsChanged = true;
             }
         }
 
-        if (added) {
-            dataChanged = true;
+        if (added && loaded) {
+            if (journal.getRecordCount() >= JOURNAL_COMPACT_THRESHOLD) {
+                compactJournalAsync();
+            }
         }
 
         return added;
     }
 
+    /**
+     * Index a journaled sale and fold it into the rollups and the sales columns
+     */
+    private boolean addToHistory(Transaction transaction) {
+        boolean added = transactions.add(transaction);
+        if (added) {
+            journaledMonths.add(YearMonth.from(transaction.getTimestamp()));
+            rollups.record(transaction);
+            rollupsChanged = true;
+            if (columnsValid) {
+                try {
+                    columns.append(Collections.singletonList(transaction), this::resolveCategory);
+                } catch (IOException e) {
+                    // Queries fall back to the transaction index until the columns are rebuilt
+                    System.err.println("Error appending to sales columns: " + e.getMessage());
+                    rebuildColumnsAsync();
+                }
+            } else if (columnsRebuilding) {
+                columnsBacklog.add(transaction);
+            }
+        }
+        return added;
+    }
+
     /**
      * Settings Management
      */
@@ -467,7 +1367,13 @@ public class DataManager {
         try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(SETTINGS_FILE))) {
             @SuppressWarnings("unchecked")
             Map<String, Object> loadedSettings = (Map<String, Object>) ois.readObject();
-            this.settings = loadedSettings != null ? loadedSettings : new HashMap<>();
+            Map<String, Object> concurrentSettings = new ConcurrentHashMap<>();
+            if (loadedSettings != null) {
+                loadedSettings.forEach((key, value) -> {
+                    if (key != null && value != null) concurrentSettings.put(key, value);
+                });
+            }
+            this.settings = concurrentSettings;
 
             // Set default settings if not present
             if (!settings.containsKey("taxRate")) {
@@ -494,72 +1400,242 @@ public class DataManager {
             saveSettings();
         } catch (IOException | ClassNotFoundException e) {
             System.err.println("Error loading settings: " + e.getMessage());
-            settings = new HashMap<>();
+            settings = new ConcurrentHashMap<>();
         }
     }
 
     private void saveSettings() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(SETTINGS_FILE))) {
-            oos.writeObject(settings);
+        try {
+            synchronized (saveLock) {
+                byte[] settingsData = encodeSettings();
+                new FileGroupCommit().add(SETTINGS_FILE, settingsData).commit();
+            }
         } catch (IOException e) {
             System.err.println("Error saving settings: " + e.getMessage());
         }
     }
 
+    // Settings stay in the Java serialization format, written as a plain HashMap
+    private byte[] encodeSettings() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(new HashMap<>(settings));
+        }
+        return bytes.toByteArray();
+    }
+
     public Object getSetting(String key) {
         return settings.get(key);
     }
 
 
 
-    public void setSetting(String key, Object value) {
-        settings.put(key, value);
-        dataChanged = true;
+    public synchronized void setSetting(String key, Object value) {
+        if (value != null) {
+            settings.put(key, value);
+        } else {
+            settings.remove(key);
+        }
+        settingsChanged = true;
     }
 
     /**
      * Reports and Analytics
+     * These read snapshots without locking, so reports can run on a background thread
+     * while sales are being recorded.
      */
 
 
     public double getTotalSales() {
-        return transactions.stream()
-                .mapToDouble(Transaction::getTotal)
-                .sum() / 100.0; // Convert from cents to dollars
+        awaitHistory();
+        return rollups.getGrandTotal() / 100.0; // Convert from cents to dollars
     }
 
 
     public double getSalesForDate(LocalDateTime date) {
-        return transactions.stream()
-                .filter(t -> t.getTimestamp().toLocalDate().equals(date.toLocalDate()))
-                .mapToDouble(Transaction::getTotal)
-                .sum() / 100.0; // Convert from cents to dollars
+        awaitHistory();
+        LocalDate day = date.toLocalDate();
+        return rollups.sum(day, day).getTotal() / 100.0; // Convert from cents to dollars
     }
 
     public double getSalesForDateRange(LocalDateTime start, LocalDateTime end) {
-        return getTransactionsByDateRange(start, end).stream()
-                .mapToDouble(Transaction::getTotal)
-                .sum() / 100.0; // Convert from cents to dollars
+        return getSalesSummary(start, end).getTotal() / 100.0; // Convert from cents to dollars
+    }
+
+    /**
+     * Daily rollups for the days between from and to inclusive (either bound may be null).
+     * Days without sales are not included.
+     */
+    public SortedMap<LocalDate, SalesSummary> getDailySales(LocalDate from, LocalDate to) {
+        awaitHistory();
+        return new TreeMap<>(rollups.range(from, to));
+    }
+
+    /**
+     * Sales figures for start <= timestamp <= end (either bound may be null).
+     * Whole days are read from the daily rollups; only the partial days at either end
+     * of the range are summed from individual transactions.
+     */
+    public SalesSummary getSalesSummary(LocalDateTime start, LocalDateTime end) {
+        awaitHistory();
+        LocalDate firstFullDay = null;
+        if (start != null) {
+            firstFullDay = start.toLocalTime().equals(LocalTime.MIDNIGHT)
+                    ? start.toLocalDate() : start.toLocalDate().plusDays(1);
+        }
+        LocalDate lastFullDay = null;
+        if (end != null) {
+            lastFullDay = end.toLocalTime().equals(LocalTime.MAX)
+                    ? end.toLocalDate() : end.toLocalDate().minusDays(1);
+        }
+
+        SalesSummary summary = new SalesSummary();
+        if (firstFullDay != null && lastFullDay != null && firstFullDay.isAfter(lastFullDay)) {
+            // No whole day inside the range
+            addTransactions(summary, start, end);
+            return summary;
+        }
+
+        summary.add(rollups.sum(firstFullDay, lastFullDay));
+        if (start != null && !firstFullDay.equals(start.toLocalDate())) {
+            addTransactions(summary, start, firstFullDay.atStartOfDay().minusNanos(1));
+        }
+        if (end != null && !lastFullDay.equals(end.toLocalDate())) {
+            addTransactions(summary, lastFullDay.plusDays(1).atStartOfDay(), end);
+        }
+        return summary;
+    }
+
+    private void addTransactions(SalesSummary summary, LocalDateTime start, LocalDateTime end) {
+        SalesColumns.View view = columnsView();
+        if (view == null) {
+            TransactionIndex.Snapshot snapshot = snapshotFor(start, end);
+            int[] positions = snapshot.positions(start, end);
+            snapshot.forEach(positions[0], positions[1], summary::record);
+            return;
+        }
+
+        long startKey = TransactionIndex.keyOf(start);
+        long endKey = TransactionIndex.keyOf(end);
+        int[] rows = view.positions(startKey, endKey);
+        for (int row = rows[0]; row < rows[1]; row++) {
+            if (view.isSorted() || view.inRange(row, startKey, endKey)) {
+                summary.record(view.subtotal(row), view.tax(row), view.total(row), view.string(view.paymentMethod(row)));
+            }
+        }
+    }
+
+    /**
+     * Best selling products by units for start <= timestamp <= end (either bound may be null)
+     */
+    public List<ProductSales> getTopProductsByUnits(LocalDateTime start, LocalDateTime end, int limit) {
+        awaitHistory();
+        return aggregateProductSales(start, end).top(limit, ProductSales.BY_UNITS);
+    }
+
+    /**
+     * Best selling products by revenue for start <= timestamp <= end (either bound may be null)
+     */
+    public List<ProductSales> getTopProductsByRevenue(LocalDateTime start, LocalDateTime end, int limit) {
+        awaitHistory();
+        return aggregateProductSales(start, end).top(limit, ProductSales.BY_REVENUE);
+    }
+
+    /**
+     * Per-product counters for the range, computed once and cached by the index positions
+     * the range covers, so e.g. "last 30 days" ending now reuses the result until a new sale.
+     * Positions only identify the same transactions within one index version, so the cache
+     * is dropped whenever the version moves on.
+     */
+    private ProductSalesAggregator aggregateProductSales(LocalDateTime start, LocalDateTime end) {
+        TransactionIndex.Snapshot snapshot = snapshotFor(start, end);
+        int[] positions = snapshot.positions(start, end);
+        long key = ((long) positions[0] << 32) | positions[1];
+
+        synchronized (productSalesCache) {
+            if (productSalesCacheVersion != snapshot.version()) {
+                productSalesCache.clear();
+                productSalesCacheVersion = snapshot.version();
+            }
+            ProductSalesAggregator cached = productSalesCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        // Counted outside the lock; a result for an outdated snapshot is returned but not cached
+        ProductSalesAggregator counters = new ProductSalesAggregator();
+        snapshot.forEach(positions[0], positions[1], counters::add);
+        synchronized (productSalesCache) {
+            if (productSalesCacheVersion == snapshot.version()) {
+                productSalesCache.put(key, counters);
+            }
+        }
+        return counters;
     }
 
     public Map<String, Double> getSalesByCategory() {
         Map<String, Double> salesByCategory = new HashMap<>();
+        for (Map.Entry<String, Long> entry : getSalesByCategory(null, null).entrySet()) {
+            salesByCategory.put(entry.getKey(), entry.getValue() / 100.0); // Convert from cents to dollars
+        }
+        return salesByCategory;
+    }
 
-        for (Transaction transaction : transactions) {
-            for (Transaction.TransactionItem item : transaction.getItems()) {
-                String category = item.getProduct().getCategory();
-                double sales = item.getTotalPrice() / 100.0; // Convert from cents to dollars
-                salesByCategory.put(category, salesByCategory.getOrDefault(category, 0.0) + sales);
-            }
+    /**
+     * Sales in cents per category for start <= timestamp <= end (either bound may be null).
+     * Summed from the sales columns, large ranges in parallel on the common fork-join pool.
+     */
+    public Map<String, Long> getSalesByCategory(LocalDateTime start, LocalDateTime end) {
+        awaitHistory();
+        Map<String, Long> salesByCategory = new TreeMap<>();
+        SalesColumns.View view = columnsView();
+        if (view == null) {
+            TransactionIndex.Snapshot snapshot = snapshotFor(start, end);
+            int[] positions = snapshot.positions(start, end);
+            snapshot.forEach(positions[0], positions[1], transaction -> {
+                for (Transaction.TransactionItem item : transaction.getItems()) {
+                    salesByCategory.merge(resolveCategory(item), (long) item.getTotalPrice(), Long::sum);
+                }
+            });
+            return salesByCategory;
         }
 
+        long startKey = start != null ? TransactionIndex.keyOf(start) : Long.MIN_VALUE;
+        long endKey = end != null ? TransactionIndex.keyOf(end) : Long.MAX_VALUE;
+        int[] rows = view.positions(startKey, endKey);
+        long[] sums = new CategorySalesTask(view, rows[0], rows[1], startKey, endKey).invoke();
+
+        // Ids are shared with payment methods, whose slots stay empty
+        for (int id = 0; id < sums.length; id++) {
+            if (sums[id] != 0) {
+                String category = id < view.stringCount() ? view.string(id) : UNCATEGORIZED;
+                salesByCategory.merge(category, sums[id], Long::sum);
+            }
+        }
         return salesByCategory;
     }
 
+    /**
+     * Category of a sold line: the category recorded at sale time, or the product's
+     * current category for lines recorded without one (for the sales columns, as of
+     * when the line was added to them)
+     */
+    private String resolveCategory(Transaction.TransactionItem item) {
+        String category = item.getCategory();
+        if (category == null) {
+            Product product = getProductById(item.getProductId());
+            if (product != null) {
+                category = product.getCategory();
+            }
+        }
+        return category != null ? category : UNCATEGORIZED;
+    }
+
     public Map<String, Integer> getLowStockProducts() {
         Map<String, Integer> lowStock = new HashMap<>();
 
-        for (Product product : products) {
+        for (Product product : catalog.products()) {
             if (product.isLowStock()) {
                 lowStock.put(product.getName(), product.getQuantity());
             }
@@ -573,31 +1649,63 @@ public class DataManager {
      * Data Management
      */
 
-    public void clearAllData() {
+    /**
+     * Clear all data, after backing it up; nothing is cleared if the backup fails
+     */
+    public void clearAllData() throws IOException {
         // Create backup before clearing
         createBackup();
 
-        products.clear();
-        transactions.clear();
-        settings.clear();
-        nextProductId = 1;
-        nextTransactionId = 1;
-
-        // Re-initialize settings
-        loadSettings();
+        synchronized (snapshotLock) {
+            // saveLock comes before the lock, as loadSettings may write the default settings
+            synchronized (saveLock) {
+                synchronized (this) {
+                    transactions.clear();
+                    loadedMonths.clear();
+                    journaledMonths.clear();
+                    dataGeneration++;
+                    try {
+                        journal.reset();
+                        journal.open();
+                    } catch (IOException e) {
+                        System.err.println("Error resetting transaction journal: " + e.getMessage());
+                    }
+                    try {
+                        segments.replaceAll(Collections.emptyList());
+                    } catch (IOException e) {
+                        System.err.println("Error saving transactions: " + e.getMessage());
+                    }
+                    rebuildRollups();
+                    rebuildColumnsAsync();
+
+                    catalog = ProductCatalog.EMPTY;
+                    productSearch.rebuild(catalog.products());
+                    settings.clear();
+                    nextProductId = 1;
+                    nextTransactionId = 1;
+
+                    // Re-initialize settings
+                    loadSettings();
+                    productsChanged = true;
+                    settingsChanged = true;
+                }
+            }
+        }
 
-        saveData();
-        dataChanged = false;
+        flushPendingSaves();
     }
 
     /**
-     * Check data integrity and repair if necessary
+     * Check data integrity and repair if necessary.
+     * Products, settings and the loaded transactions are checked at once; the stored
+     * months are then checked in the background (see {@link #verifySegmentsAsync}).
      */
     public boolean checkDataIntegrity() {
+        awaitHistory();
         try {
             // Check for data files existence
             boolean productsFileExists = Files.exists(Paths.get(PRODUCTS_FILE));
-            boolean transactionsFileExists = Files.exists(Paths.get(TRANSACTIONS_FILE));
+            boolean transactionsFileExists = Files.exists(Paths.get(SEGMENT_INDEX_FILE));
             boolean settingsFileExists = Files.exists(Paths.get(SETTINGS_FILE));
 
             if (!productsFileExists || !transactionsFileExists || !settingsFileExists) {
@@ -611,9 +1719,12 @@ public class DataManager {
             }
 
             // Validate data integrity
-            validateProducts();
+            synchronized (this) {
+                validateProducts();
+                validateSettings();
+            }
             validateTransactions();
-            validateSettings();
+            verifySegmentsAsync();
 
             return true;
         } catch (Exception e) {
@@ -627,31 +1738,129 @@ public class DataManager {
      * Validate products data
      */
     private void validateProducts() {
+        List<Product> products = new ArrayList<>(catalog.products());
         products.removeIf(product -> product == null || product.getName() == null || product.getName().trim().isEmpty());
 
-        // Ensure no duplicate IDs
+        // Ensure no duplicate IDs; a duplicate gets a renumbered copy, as published products are not edited
         Set<Integer> seenIds = new HashSet<>();
-        products.removeIf(product -> {
-            if (product == null) return true;
-            if (seenIds.contains(product.getId())) {
-                product.setId(nextProductId++);
+        for (int i = 0; i < products.size(); i++) {
+            Product product = products.get(i);
+            if (!seenIds.add(product.getId())) {
+                Product renumbered = copyOf(product, nextProductId++, product.getQuantity());
+                products.set(i, renumbered);
+                seenIds.add(renumbered.getId());
             }
-            return !seenIds.add(product.getId());
-        });
+        }
+
+        catalog = new ProductCatalog(products);
+        productSearch.rebuild(catalog.products());
     }
 
 
 
     /**
-     * Validate transactions data
+     * Check the transactions loaded so far in one pass, looking products up by ID.
+     * Sales of products deleted since are kept (each line carries a snapshot of its product)
+     * and only reported. Transactions that cannot be used at all are quarantined.
+     * The scan reads an index snapshot without locking. Removing quarantined transactions
+     * recounts only the days they were on, and their months are rewritten and the journal
+     * compacted, so they do not come back on the next start; the sales columns are rebuilt
+     * in the background.
      */
     private void validateTransactions() {
-        // Remove invalid transactions and transactions with invalid products in one pass
-        transactions.removeIf(transaction -> {
-            if (transaction == null || transaction.getItems() == null) return true;
-            return transaction.getItems().stream()
-                .anyMatch(item -> item.getProduct() == null || getProductById(item.getProduct().getId()) == null);
-        });
+        TransactionIndex.Snapshot snapshot = transactions.snapshot();
+        Set<Transaction> broken = Collections.newSetFromMap(new IdentityHashMap<>());
+        int deletedProductLines = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            Transaction transaction = snapshot.get(i);
+            if (transaction.getItems() == null || transaction.getItems().stream()
+                    .anyMatch(item -> item == null || item.getSnapshot() == null)) {
+                broken.add(transaction);
+                continue;
+            }
+            for (Transaction.TransactionItem item : transaction.getItems()) {
+                if (catalog.byId(item.getProductId()) == null) {
+                    deletedProductLines++;
+                }
+            }
+        }
+
+        if (deletedProductLines > 0) {
+            System.out.println("Integrity check: " + deletedProductLines
+                    + " sale lines refer to products no longer in the catalog (kept)");
+        }
+        if (broken.isEmpty()) {
+            return;
+        }
+        Set<YearMonth> months = new TreeSet<>();
+        Set<LocalDate> days = new TreeSet<>();
+        for (Transaction transaction : broken) {
+            quarantine.add("transactions", "id-" + transaction.getTransactionId(),
+                    "sale line without product data", serialize(transaction));
+            months.add(YearMonth.from(transaction.getTimestamp()));
+            days.add(transaction.getTimestamp().toLocalDate());
+        }
+
+        synchronized (snapshotLock) {
+            // The months are rewritten from the index below, so all of their sales must be in it
+            loadSegments(months);
+            synchronized (this) {
+                transactions.removeIf(broken::contains);
+                for (LocalDate day : days) {
+                    rollups.replaceDay(day, transactions.range(day.atStartOfDay(), day.atTime(LocalTime.MAX)));
+                }
+                rollupsChanged = true;
+                rebuildColumnsAsync();
+            }
+            writeSegments(months);
+        }
+        // Journaled copies would be replayed on the next start
+        compactJournalAsync();
+    }
+
+    // Java serialization, as it can hold transactions the binary codec cannot
+    private static byte[] serialize(Transaction transaction) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(transaction);
+        } catch (IOException e) {
+            System.err.println("Could not serialize transaction " + transaction.getTransactionId() + ": " + e.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Check every stored month in the background, one month per task on the compaction thread.
+     * Reading a month checks each record's CRC and quarantines damaged ones; the readable
+     * transactions are then compared with the month's index entry. Months whose index entry
+     * is unchanged since they were last checked are skipped.
+     */
+    private void verifySegmentsAsync() {
+        for (YearMonth month : segments.segments().keySet()) {
+            compactionExecutor.execute(() -> verifySegment(month));
+        }
+    }
+
+    private void verifySegment(YearMonth month) {
+        synchronized (snapshotLock) {
+            TransactionSegments.Segment indexed = segments.segments().get(month);
+            if (indexed == null || verifiedSegments.get(month) == indexed) {
+                return;
+            }
+            List<Transaction> contents;
+            try {
+                contents = segments.read(month);
+            } catch (IOException e) {
+                System.err.println("Integrity check: transactions for " + month + " are unreadable: " + e.getMessage());
+                return;
+            }
+            TransactionSegments.Segment actual = TransactionSegments.Segment.of(month, contents);
+            if (actual.transactionCount != indexed.transactionCount || actual.total != indexed.total) {
+                System.err.println("Integrity check: " + month + " has " + actual.transactionCount
+                        + " readable transactions, the segment index lists " + indexed.transactionCount);
+            }
+            verifiedSegments.put(month, indexed);
+        }
     }
 
 
@@ -682,22 +1891,34 @@ public class DataManager {
     }
 
     /**
-     * Force immediate data save (manual save)
+     * Force immediate data save (manual save), written by the persistence writer like every other save
      */
     public void forceSave() {
-        saveData();
+        synchronized (this) {
+            productsChanged = true;
+            settingsChanged = true;
+        }
+        flushPendingSaves();
     }
 
     /**
      * Get data statistics
      */
     public String getDataStatistics() {
+        awaitHistory();
         StringBuilder stats = new StringBuilder();
         stats.append("=== Data Statistics ===\n");
-        stats.append("Products: ").append(products.size()).append("\n");
-        stats.append("Transactions: ").append(transactions.size()).append("\n");
+        stats.append("Products: ").append(catalog.size()).append("\n");
+        for (Map.Entry<String, Integer> entry : getCategoryCounts().entrySet()) {
+            stats.append("  ").append(entry.getKey()).append(": ").append(entry.getValue()).append("\n");
+        }
+        stats.append("Transactions: ").append(rollups.getTransactionCount()).append("\n");
         stats.append("Total Sales: $").append(String.format("%.2f", getTotalSales())).append("\n");
-        stats.append("Last Auto-Save: ").append(dataChanged ? "Pending" : "Up to date").append("\n");
+        stats.append("Last Auto-Save: ").append(hasUnsavedChanges() ? "Pending" : "Up to date").append("\n");
+        int quarantined = quarantine.size();
+        if (quarantined > 0) {
+            stats.append("Quarantined Records: ").append(quarantined).append(" (see ").append(QUARANTINE_DIR).append(")\n");
+        }
 
         // Backup info
         List<String> backups = getAvailableBackups();
@@ -714,54 +1935,109 @@ public class DataManager {
      */
     public void setupShutdownHook() {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            if (dataChanged) {
+            stopAutoSave();
+            try {
+                // The loader replays and reopens the journal, so let it finish first
+                historyLoaded.get(SHUTDOWN_HISTORY_WAIT_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                System.err.println("Sales history still loading at shutdown");
+            } catch (Exception e) {
+                // Loading failed; there is nothing of it to save
+            }
+            if (hasUnsavedChanges()) {
                 System.out.println("Saving data before shutdown...");
+            }
+            if (!persistenceWriter.close(SAVE_FLUSH_TIMEOUT_MS)) {
                 saveData();
             }
-            stopAutoSave();
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Error closing transaction journal: " + e.getMessage());
+            }
         }));
     }
 
 
-    public void exportData(String filePath) {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(filePath))) {
-            writer.println("=== POS System Data Export ===");
-            writer.println("Export Date: " + LocalDateTime.now());
-            writer.println();
+    /**
+     * Stream products, transactions or sale lines to a CSV or JSON Lines file,
+     * reporting progress per month of history. Returns false if the export was
+     * cancelled (the partial file is deleted) or failed.
+     */
+    public boolean exportData(String filePath, ExportOptions options, TaskProgress progress) {
+        awaitHistory();
+        LocalDateTime start = options.getStart();
+        LocalDateTime end = options.getEnd();
+        try {
+            return new DataExporter(options).export(Paths.get(filePath), catalog.products(),
+                    monthsBetween(start, end), month -> readMonth(month, start, end), progress);
+        } catch (IOException e) {
+            System.err.println("Error exporting data: " + e.getMessage());
+            return false;
+        }
+    }
 
-            // Export products
-            writer.println("=== PRODUCTS ===");
-            writer.printf("%-5s %-20s %-10s %-15s %-10s%n", "ID", "Name", "Price", "Category", "Stock");
-            writer.println("-".repeat(70));
-            for (Product product : products) {
-                writer.printf("%-5d %-20s $%-9.2f %-15s %-10d%n",
-                    product.getId(), product.getName(), product.getPrice() / 100.0,
-                    product.getCategory(), product.getQuantity());
+    /**
+     * Months holding transactions (stored or only in the index) that overlap start..end, oldest first
+     */
+    private List<YearMonth> monthsBetween(LocalDateTime start, LocalDateTime end) {
+        NavigableSet<YearMonth> months = new TreeSet<>(segments.segments().keySet());
+        TransactionIndex.Snapshot snapshot = transactions.snapshot();
+        if (!snapshot.isEmpty()) {
+            YearMonth last = YearMonth.from(snapshot.get(snapshot.size() - 1).getTimestamp());
+            for (YearMonth month = YearMonth.from(snapshot.get(0).getTimestamp()); !month.isAfter(last); month = month.plusMonths(1)) {
+                months.add(month);
             }
-            writer.println();
+        }
+        if (months.isEmpty()) {
+            return Collections.emptyList();
+        }
+        YearMonth from = start != null ? YearMonth.from(start) : months.first();
+        YearMonth to = end != null ? YearMonth.from(end) : months.last();
+        if (from.isAfter(to)) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(months.subSet(from, true, to, true));
+    }
 
-            // Export transactions
-            writer.println("=== TRANSACTIONS ===");
-            writer.printf("%-10s %-20s %-15s %-10s%n", "ID", "Date", "Items", "Total");
-            writer.println("-".repeat(60));
-            for (Transaction transaction : transactions) {
-                writer.printf("%-10d %-20s %-15d $%-9.2f%n",
-                    transaction.getTransactionId(),
-                    transaction.getTimestamp(),
-                    transaction.getItemCount(),
-                    transaction.getTotal() / 100.0);
+    /**
+     * Transactions of one month with start <= timestamp <= end, oldest first.
+     * A month that is not loaded is read from its segment without being added to the index,
+     * together with its sales that are so far only in the index (journaled since the segment
+     * was written), so streaming the whole history does not keep it in memory.
+     */
+    private List<Transaction> readMonth(YearMonth month, LocalDateTime start, LocalDateTime end) throws IOException {
+        LocalDateTime from = month.atDay(1).atStartOfDay();
+        LocalDateTime to = month.atEndOfMonth().atTime(LocalTime.MAX);
+        if (start != null && start.isAfter(from)) from = start;
+        if (end != null && end.isBefore(to)) to = end;
+
+        List<Transaction> indexed = new ArrayList<>();
+        List<Transaction> stored;
+        synchronized (snapshotLock) {
+            TransactionIndex.Snapshot snapshot = transactions.snapshot();
+            int[] positions = snapshot.positions(from, to);
+            snapshot.forEach(positions[0], positions[1], indexed::add);
+            if (loadedMonths.contains(month) || !segments.segments().containsKey(month)) {
+                return indexed;
             }
-            writer.println();
-
-            // Export summary
-            writer.println("=== SUMMARY ===");
-            writer.println("Total Products: " + products.size());
-            writer.println("Total Transactions: " + transactions.size());
-            writer.println("Total Sales: $" + String.format("%.2f", getTotalSales() / 100.0));
-
+            stored = segments.read(month);
+        }
 
-        } catch (IOException e) {
-            System.err.println("Error exporting data: " + e.getMessage());
+        Set<Integer> indexedIds = new HashSet<>();
+        for (Transaction transaction : indexed) {
+            indexedIds.add(transaction.getTransactionId());
+        }
+        List<Transaction> merged = new ArrayList<>(stored.size() + indexed.size());
+        for (Transaction transaction : stored) {
+            LocalDateTime timestamp = transaction.getTimestamp();
+            if (!timestamp.isBefore(from) && !timestamp.isAfter(to)
+                    && !indexedIds.contains(transaction.getTransactionId())) {
+                merged.add(transaction);
+            }
         }
+        merged.addAll(indexed);
+        merged.sort(Comparator.comparing(Transaction::getTimestamp));
+        return merged;
     }
 }
@@ -0,0 +1,95 @@
+package com.pos.manager;
+
+import java.time.LocalDateTime;
+
+/**
+ * What {@link DataManager#exportData(String, ExportOptions, TaskProgress)} writes:
+ * which rows, in which format, for which dates and whether the file is gzip-compressed
+ */
+public class ExportOptions {
+
+    public enum Dataset {
+        PRODUCTS("products"),
+        TRANSACTIONS("transactions"),
+        LINE_ITEMS("line_items");
+
+        private final String fileName;
+
+        Dataset(String fileName) {
+            this.fileName = fileName;
+        }
+
+        /**
+         * Suggested file name without extension
+         */
+        public String getFileName() {
+            return fileName;
+        }
+    }
+
+    public enum Format {
+        CSV(".csv"),
+        JSON_LINES(".jsonl");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    private final Dataset dataset;
+    private final Format format;
+    private LocalDateTime start;
+    private LocalDateTime end;
+    private boolean gzip;
+
+    public ExportOptions(Dataset dataset, Format format) {
+        this.dataset = dataset;
+        this.format = format;
+    }
+
+    public Dataset getDataset() {
+        return dataset;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public LocalDateTime getStart() {
+        return start;
+    }
+
+    public LocalDateTime getEnd() {
+        return end;
+    }
+
+    /**
+     * Only export transactions with start <= timestamp <= end; either bound may be null.
+     * Products are not filtered.
+     */
+    public void setDateRange(LocalDateTime start, LocalDateTime end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    public void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    /**
+     * Suggested file name, e.g. transactions.csv.gz
+     */
+    public String getDefaultFileName() {
+        return dataset.getFileName() + format.getExtension() + (gzip ? ".gz" : "");
+    }
+}
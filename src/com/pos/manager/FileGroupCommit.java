@@ -0,0 +1,133 @@
+package com.pos.manager;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Replaces a set of data files, each one atomically, in the order they were added.
+ * Every file is written to a temporary file next to it; only when all of them are written
+ * are they forced to disk, one after another, and renamed over the originals. The renames
+ * are made durable with a single sync per directory, so a save of several files costs one
+ * round of fsyncs instead of one full write-and-sync per file.
+ *
+ * A crash leaves each file either in its old or its new version, never truncated, but the
+ * set as a whole is not atomic: a crash between two renames leaves the files added first
+ * new and the later ones old. Callers that need one file to describe others add it last.
+ */
+class FileGroupCommit {
+
+    /**
+     * Content streamed into a staged file
+     */
+    interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Map<Path, Content> staged = new LinkedHashMap<>();
+
+    FileGroupCommit add(String file, byte[] data) {
+        return add(file, out -> out.write(data));
+    }
+
+    FileGroupCommit add(String file, Content content) {
+        staged.put(Paths.get(file), content);
+        return this;
+    }
+
+    boolean isEmpty() {
+        return staged.isEmpty();
+    }
+
+    /**
+     * Write, sync and rename all staged files in the order they were added. On failure no
+     * original file has been replaced by a partial one and the temporary files are removed;
+     * files renamed before the failure keep their new version.
+     */
+    void commit() throws IOException {
+        List<FileChannel> channels = new ArrayList<>();
+        List<Path> temps = new ArrayList<>();
+        try {
+            // Write everything first ...
+            for (Map.Entry<Path, Content> entry : staged.entrySet()) {
+                Path temp = tempFileFor(entry.getKey());
+                temps.add(temp);
+                FileChannel channel = FileChannel.open(temp,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                channels.add(channel);
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+                entry.getValue().writeTo(out);
+                out.flush();
+            }
+
+            // ... then sync the whole group
+            for (FileChannel channel : channels) {
+                channel.force(true);
+            }
+        } catch (IOException e) {
+            closeAll(channels);
+            deleteAll(temps);
+            throw e;
+        }
+        closeAll(channels);
+
+        Set<Path> directories = new LinkedHashSet<>();
+        int renamed = 0;
+        try {
+            for (Path target : staged.keySet()) {
+                Files.move(temps.get(renamed), target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                renamed++;
+                Path directory = target.toAbsolutePath().getParent();
+                if (directory != null) {
+                    directories.add(directory);
+                }
+            }
+        } catch (IOException e) {
+            deleteAll(temps.subList(renamed, temps.size()));
+            throw e;
+        } finally {
+            for (Path directory : directories) {
+                syncDirectory(directory);
+            }
+        }
+        staged.clear();
+    }
+
+    private static Path tempFileFor(Path target) {
+        return target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+    }
+
+    // Persist the renames; not supported on every platform, where the rename itself has to do
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Directories cannot be opened for syncing on this platform
+        }
+    }
+
+    private static void closeAll(List<FileChannel> channels) {
+        for (FileChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing data file: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void deleteAll(List<Path> files) {
+        for (Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                System.err.println("Error removing temporary file " + file + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.pos.manager;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs saves on a dedicated writer thread so callers such as checkout never wait for disk I/O.
+ * Save requests are coalesced: while one is queued, further requests are absorbed by it, and the
+ * writer waits briefly after picking one up so that a burst of changes ends in a single save.
+ * A flush is a barrier that returns once everything requested before it has been written.
+ */
+class PersistenceWriter {
+
+    private static final int QUEUE_CAPACITY = 16;
+    private static final long COALESCE_DELAY_MS = 200; // Changes within this window share one save
+
+    private static final Object SAVE = new Object();
+    private static final Object STOP = new Object();
+
+    private final Runnable save;
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicBoolean savePending = new AtomicBoolean();
+    private final Thread thread;
+
+    PersistenceWriter(Runnable save) {
+        this.save = save;
+        this.thread = new Thread(this::run, "pos-persistence");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Ask for a save without waiting for it
+     */
+    void requestSave() {
+        if (savePending.compareAndSet(false, true) && !queue.offer(SAVE)) {
+            // The queue is full of flushes, each of which saves anyway
+            savePending.set(false);
+        }
+    }
+
+    /**
+     * Save now on the writer thread and wait until it is done.
+     * Returns false if the save did not finish within the timeout.
+     */
+    boolean flush(long timeoutMs) {
+        if (Thread.currentThread() == thread) {
+            save.run();
+            return true;
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        try {
+            return queue.offer(done, timeoutMs, TimeUnit.MILLISECONDS)
+                && done.await(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Write what is pending and stop the writer thread.
+     * Returns false if the final save did not finish within the timeout.
+     */
+    boolean close(long timeoutMs) {
+        boolean flushed = flush(timeoutMs);
+        queue.offer(STOP);
+        return flushed;
+    }
+
+    private void run() {
+        while (true) {
+            Object request;
+            try {
+                request = queue.take();
+                if (request == SAVE) {
+                    // Let the rest of a burst arrive; a flush arriving meanwhile is served by this save
+                    Object next = queue.poll(COALESCE_DELAY_MS, TimeUnit.MILLISECONDS);
+                    savePending.set(false);
+                    saveQuietly();
+                    if (next instanceof CountDownLatch) {
+                        ((CountDownLatch) next).countDown();
+                    } else if (next == STOP) {
+                        return;
+                    }
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            if (request == STOP) {
+                return;
+            }
+            saveQuietly();
+            ((CountDownLatch) request).countDown();
+        }
+    }
+
+    private void saveQuietly() {
+        try {
+            save.run();
+        } catch (RuntimeException e) {
+            System.err.println("Error in background save: " + e.getMessage());
+        }
+    }
+}
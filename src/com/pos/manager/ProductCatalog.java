@@ -0,0 +1,291 @@
+package com.pos.manager;
+
+import com.pos.model.Product;
+
+import java.util.*;
+
+/**
+ * Immutable product list with its id, barcode and category lookup indexes.
+ * A new catalog is built for every change to the list and published as a whole,
+ * so readers never lock and never see a list and index that disagree.
+ * When several products share an ID or barcode the first one in the list wins,
+ * matching the order the previous linear scans resolved them in.
+ * A catalog derived by adding, replacing or removing one product copies the indexes of
+ * the catalog it was derived from and changes only that product's entries; the list is
+ * scanned again only to find which product now wins a barcode it lost, or to place the
+ * product among its new category's products.
+ */
+final class ProductCatalog {
+
+    static final ProductCatalog EMPTY = new ProductCatalog(Collections.emptyList());
+
+    private final List<Product> products;
+    private final Map<Integer, Product> byId;
+    private final Map<String, Product> byBarcode;
+    private final Map<String, List<Product>> byCategory;
+    private final List<String> categories;
+
+    ProductCatalog(List<Product> products) {
+        this.products = Collections.unmodifiableList(new ArrayList<>(products));
+        Map<Integer, Product> ids = new HashMap<>();
+        Map<String, Product> barcodes = new HashMap<>();
+        Map<String, List<Product>> categoryLists = new HashMap<>();
+        for (Product product : this.products) {
+            if (product != null) {
+                ids.putIfAbsent(product.getId(), product);
+                if (product.getBarcode() != null) {
+                    barcodes.putIfAbsent(product.getBarcode(), product);
+                }
+                if (product.getCategory() != null) {
+                    categoryLists.computeIfAbsent(product.getCategory(), c -> new ArrayList<>()).add(product);
+                }
+            }
+        }
+        for (Map.Entry<String, List<Product>> entry : categoryLists.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        this.byId = ids;
+        this.byBarcode = barcodes;
+        this.byCategory = categoryLists;
+
+        List<String> sorted = new ArrayList<>(categoryLists.keySet());
+        Collections.sort(sorted);
+        this.categories = Collections.unmodifiableList(sorted);
+    }
+
+    // Indexes that are not changed are shared with the catalog the new one was derived from
+    private ProductCatalog(List<Product> products, Map<Integer, Product> byId, Map<String, Product> byBarcode,
+                           Map<String, List<Product>> byCategory, List<String> categories) {
+        this.products = Collections.unmodifiableList(products);
+        this.byId = byId;
+        this.byBarcode = byBarcode;
+        this.byCategory = byCategory;
+        this.categories = categories;
+    }
+
+    /**
+     * The products in list order (unmodifiable)
+     */
+    List<Product> products() {
+        return products;
+    }
+
+    int size() {
+        return products.size();
+    }
+
+    Product byId(int id) {
+        return byId.get(id);
+    }
+
+    Product byBarcode(String barcode) {
+        return barcode != null ? byBarcode.get(barcode) : null;
+    }
+
+    /**
+     * The products of a category in list order (unmodifiable, empty for an unknown category)
+     */
+    List<Product> inCategory(String category) {
+        List<Product> inCategory = category != null ? byCategory.get(category) : null;
+        return inCategory != null ? inCategory : Collections.<Product>emptyList();
+    }
+
+    /**
+     * The distinct categories of the products, sorted (unmodifiable)
+     */
+    List<String> categories() {
+        return categories;
+    }
+
+    /**
+     * A catalog with the product added at the end
+     */
+    ProductCatalog with(Product product) {
+        List<Product> changed = new ArrayList<>(products);
+        changed.add(product);
+        if (product == null) {
+            return new ProductCatalog(changed, byId, byBarcode, byCategory, categories);
+        }
+
+        Map<Integer, Product> ids = byId;
+        if (!ids.containsKey(product.getId())) {
+            ids = new HashMap<>(ids);
+            ids.put(product.getId(), product);
+        }
+        Map<String, Product> barcodes = byBarcode;
+        String barcode = product.getBarcode();
+        if (barcode != null && !barcodes.containsKey(barcode)) {
+            barcodes = new HashMap<>(barcodes);
+            barcodes.put(barcode, product);
+        }
+        Map<String, List<Product>> categoryLists = byCategory;
+        List<String> sorted = categories;
+        String category = product.getCategory();
+        if (category != null) {
+            List<Product> inCategory = new ArrayList<>(inCategory(category));
+            inCategory.add(product);
+            categoryLists = new HashMap<>(categoryLists);
+            if (categoryLists.put(category, Collections.unmodifiableList(inCategory)) == null) {
+                sorted = withCategory(sorted, category);
+            }
+        }
+        return new ProductCatalog(changed, ids, barcodes, categoryLists, sorted);
+    }
+
+    /**
+     * A catalog with the product in place of the current entry with its id.
+     * The same instance passed again is re-indexed from scratch, in case its barcode or
+     * category was changed in place.
+     */
+    ProductCatalog replacing(Product product) {
+        Product current = byId(product.getId());
+        if (current == null) {
+            return this;
+        }
+        if (current == product) {
+            return new ProductCatalog(products);
+        }
+        List<Product> changed = new ArrayList<>(products);
+        int position = indexOfSame(changed, current);
+        changed.set(position, product);
+
+        Map<Integer, Product> ids = new HashMap<>(byId);
+        ids.put(product.getId(), product);
+
+        // The product takes over the current one's place, so it wins wherever that one did
+        Map<String, Product> barcodes = new HashMap<>(byBarcode);
+        String oldBarcode = current.getBarcode();
+        String newBarcode = product.getBarcode();
+        if (oldBarcode != null && barcodes.get(oldBarcode) == current) {
+            Product winner = Objects.equals(oldBarcode, newBarcode) ? product : firstWithBarcode(changed, oldBarcode);
+            if (winner != null) {
+                barcodes.put(oldBarcode, winner);
+            } else {
+                barcodes.remove(oldBarcode);
+            }
+        }
+        if (newBarcode != null && !newBarcode.equals(oldBarcode)) {
+            Product winner = barcodes.get(newBarcode);
+            if (winner == null || indexOfSame(changed, winner) > position) {
+                barcodes.put(newBarcode, product);
+            }
+        }
+
+        Map<String, List<Product>> categoryLists = new HashMap<>(byCategory);
+        List<String> sorted = categories;
+        String oldCategory = current.getCategory();
+        String newCategory = product.getCategory();
+        if (Objects.equals(oldCategory, newCategory)) {
+            if (newCategory != null) {
+                List<Product> inCategory = new ArrayList<>(inCategory(newCategory));
+                inCategory.set(indexOfSame(inCategory, current), product);
+                categoryLists.put(newCategory, Collections.unmodifiableList(inCategory));
+            }
+        } else {
+            if (oldCategory != null) {
+                sorted = removeFromCategory(categoryLists, sorted, oldCategory, current);
+            }
+            if (newCategory != null) {
+                List<Product> inCategory = new ArrayList<>();
+                for (Product candidate : changed) {
+                    if (candidate != null && newCategory.equals(candidate.getCategory())) {
+                        inCategory.add(candidate);
+                    }
+                }
+                if (categoryLists.put(newCategory, Collections.unmodifiableList(inCategory)) == null) {
+                    sorted = withCategory(sorted, newCategory);
+                }
+            }
+        }
+        return new ProductCatalog(changed, ids, barcodes, categoryLists, sorted);
+    }
+
+    /**
+     * A catalog without the products with the given id
+     */
+    ProductCatalog without(int productId) {
+        List<Product> changed = new ArrayList<>(products);
+        List<Product> removed = new ArrayList<>();
+        changed.removeIf(p -> {
+            if (p != null && p.getId() == productId) {
+                removed.add(p);
+                return true;
+            }
+            return false;
+        });
+        if (removed.isEmpty()) {
+            return this;
+        }
+
+        Map<Integer, Product> ids = new HashMap<>(byId);
+        ids.remove(productId);
+        Map<String, Product> barcodes = new HashMap<>(byBarcode);
+        Map<String, List<Product>> categoryLists = new HashMap<>(byCategory);
+        List<String> sorted = categories;
+        for (Product product : removed) {
+            String barcode = product.getBarcode();
+            if (barcode != null && barcodes.get(barcode) == product) {
+                Product winner = firstWithBarcode(changed, barcode);
+                if (winner != null) {
+                    barcodes.put(barcode, winner);
+                } else {
+                    barcodes.remove(barcode);
+                }
+            }
+            if (product.getCategory() != null) {
+                sorted = removeFromCategory(categoryLists, sorted, product.getCategory(), product);
+            }
+        }
+        return new ProductCatalog(changed, ids, barcodes, categoryLists, sorted);
+    }
+
+    // Drop one product from its category's list, and the category once it has no products left
+    private static List<String> removeFromCategory(Map<String, List<Product>> categoryLists, List<String> sorted,
+                                                   String category, Product product) {
+        List<Product> inCategory = categoryLists.get(category);
+        if (inCategory == null) {
+            return sorted;
+        }
+        List<Product> remaining = new ArrayList<>(inCategory);
+        int position = indexOfSame(remaining, product);
+        if (position >= 0) {
+            remaining.remove(position);
+        }
+        if (!remaining.isEmpty()) {
+            categoryLists.put(category, Collections.unmodifiableList(remaining));
+            return sorted;
+        }
+        categoryLists.remove(category);
+        List<String> fewer = new ArrayList<>(sorted);
+        fewer.remove(category);
+        return Collections.unmodifiableList(fewer);
+    }
+
+    private static List<String> withCategory(List<String> sorted, String category) {
+        List<String> more = new ArrayList<>(sorted);
+        int position = Collections.binarySearch(more, category);
+        if (position < 0) {
+            more.add(-position - 1, category);
+        }
+        return Collections.unmodifiableList(more);
+    }
+
+    private static Product firstWithBarcode(List<Product> products, String barcode) {
+        for (Product product : products) {
+            if (product != null && barcode.equals(product.getBarcode())) {
+                return product;
+            }
+        }
+        return null;
+    }
+
+    // Position of this very instance; Product.equals compares IDs only
+    private static int indexOfSame(List<Product> products, Product product) {
+        for (int i = 0; i < products.size(); i++) {
+            if (products.get(i) == product) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,51 @@
+package com.pos.manager;
+
+import com.pos.model.ProductSales;
+import com.pos.model.Transaction;
+
+import java.util.*;
+
+/**
+ * Per-product sales counters built in a single pass over a range of transactions.
+ * Rankings are read with a heap bounded to the requested size, so picking the top
+ * products costs O(p log k) for p products rather than sorting all of them.
+ */
+class ProductSalesAggregator {
+
+    private final Map<Integer, ProductSales> byProduct = new HashMap<>();
+
+    /**
+     * Count every line of one transaction
+     */
+    void add(Transaction transaction) {
+        for (Transaction.TransactionItem item : transaction.getItems()) {
+            byProduct.computeIfAbsent(item.getProductId(), ProductSales::new).record(item);
+        }
+    }
+
+    /**
+     * The first limit products in the given order
+     */
+    List<ProductSales> top(int limit, Comparator<ProductSales> order) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        // Worst of the current top-k sits at the head and is evicted first
+        PriorityQueue<ProductSales> heap = new PriorityQueue<>(limit + 1, order.reversed());
+        for (ProductSales sales : byProduct.values()) {
+            heap.offer(sales);
+            if (heap.size() > limit) {
+                heap.poll();
+            }
+        }
+
+        List<ProductSales> result = new ArrayList<>(heap);
+        result.sort(order);
+        return result;
+    }
+
+    int getProductCount() {
+        return byProduct.size();
+    }
+}
@@ -0,0 +1,319 @@
+package com.pos.manager;
+
+import com.pos.model.Product;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Trigram inverted index for substring search over product ID, name, description and barcode.
+ *
+ * Each product's searchable text is lowercased once, when the product is indexed, and every
+ * distinct three-character sequence of it maps to a sorted array of the IDs of the products
+ * containing it. A search intersects the arrays of the search term's trigrams, starting with
+ * the shortest, and confirms the few remaining candidates against their stored text, so it
+ * never touches the rest of the catalog. Terms shorter than three characters are matched
+ * against the stored text of every product.
+ *
+ * Products are added, updated and removed one at a time, replacing only the arrays of the
+ * trigrams that changed. Arrays are never modified once published and a rebuild swaps in
+ * new maps, so readers do not lock; a single writer at a time is assumed (the DataManager
+ * lock). Matches are always confirmed against the stored text, so a search running while
+ * a product changes can miss that product but never returns one that does not match.
+ */
+class ProductSearchIndex {
+
+    private static final int GRAM = 3;
+    private static final int[] NONE = new int[0];
+    private static final char FIELD_SEPARATOR = '\n'; // Search terms are trimmed, so never match across fields
+
+    private volatile Map<Integer, Entry> entries = new ConcurrentHashMap<>();
+    private volatile Map<Long, int[]> postings = new ConcurrentHashMap<>();
+
+    /**
+     * Index the given products from scratch (the first of several with one ID wins)
+     */
+    synchronized void rebuild(Collection<Product> products) {
+        Map<Integer, Entry> builtEntries = new ConcurrentHashMap<>();
+        GramTable building = new GramTable();
+        for (Product product : products) {
+            if (product == null || builtEntries.containsKey(product.getId())) {
+                continue;
+            }
+            Entry entry = new Entry(product);
+            builtEntries.put(product.getId(), entry);
+            String text = entry.text;
+            for (int i = 0; i + GRAM <= text.length(); i++) {
+                building.listOf(gram(text, i)).addIfNotLast(product.getId());
+            }
+        }
+        postings = building.toPostings();
+        entries = builtEntries;
+    }
+
+    /**
+     * Index a new product, or re-index one whose searchable fields may have changed
+     */
+    synchronized void put(Product product) {
+        Entry previous = entries.get(product.getId());
+        Entry entry = new Entry(product);
+        Set<Long> oldGrams = previous != null ? grams(previous.text) : Collections.<Long>emptySet();
+        Set<Long> newGrams = grams(entry.text);
+
+        for (long gram : newGrams) {
+            if (!oldGrams.contains(gram)) {
+                postings.put(gram, insert(postings.getOrDefault(gram, NONE), product.getId()));
+            }
+        }
+        entries.put(product.getId(), entry);
+        for (long gram : oldGrams) {
+            if (!newGrams.contains(gram)) {
+                removeFrom(gram, product.getId());
+            }
+        }
+    }
+
+    synchronized void remove(int productId) {
+        Entry previous = entries.remove(productId);
+        if (previous != null) {
+            for (long gram : grams(previous.text)) {
+                removeFrom(gram, productId);
+            }
+        }
+    }
+
+    /**
+     * Products whose ID, name, description or barcode contains the term (ignoring case)
+     * and, unless category is null, that are in that category; in ID order
+     */
+    List<Product> search(String term, String category) {
+        String needle = term.toLowerCase();
+        Map<Integer, Entry> entries = this.entries;
+        Map<Long, int[]> postings = this.postings;
+        List<Product> matches = new ArrayList<>();
+        if (needle.length() < GRAM) {
+            for (Entry entry : entries.values()) {
+                if (entry.matches(needle, category)) {
+                    matches.add(entry.product);
+                }
+            }
+            matches.sort(Comparator.comparingInt(Product::getId));
+            return matches;
+        }
+
+        List<int[]> lists = new ArrayList<>();
+        for (long gram : grams(needle)) {
+            int[] ids = postings.get(gram);
+            if (ids == null) {
+                return matches;
+            }
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(ids -> ids.length));
+
+        int[] candidates = lists.get(0);
+        int count = candidates.length;
+        for (int i = 1; i < lists.size() && count > 0; i++) {
+            int[] narrowed = new int[count];
+            count = intersect(candidates, count, lists.get(i), narrowed);
+            candidates = narrowed;
+        }
+        for (int i = 0; i < count; i++) {
+            Entry entry = entries.get(candidates[i]);
+            if (entry != null && entry.matches(needle, category)) {
+                matches.add(entry.product);
+            }
+        }
+        return matches;
+    }
+
+    // Intersect two sorted ID arrays into target, returning the number of common IDs.
+    // A few candidates are looked up in a long list by binary search instead of a full merge.
+    private static int intersect(int[] a, int aCount, int[] b, int[] target) {
+        if (aCount * 16 < b.length) {
+            int count = 0;
+            int from = 0;
+            for (int i = 0; i < aCount && from < b.length; i++) {
+                int position = Arrays.binarySearch(b, from, b.length, a[i]);
+                if (position >= 0) {
+                    target[count++] = a[i];
+                    from = position + 1;
+                } else {
+                    from = -position - 1;
+                }
+            }
+            return count;
+        }
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < aCount && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                target[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    private void removeFrom(long gram, int productId) {
+        int[] ids = postings.get(gram);
+        if (ids == null) {
+            return;
+        }
+        int position = Arrays.binarySearch(ids, productId);
+        if (position < 0) {
+            return;
+        }
+        if (ids.length == 1) {
+            postings.remove(gram);
+            return;
+        }
+        int[] shrunk = new int[ids.length - 1];
+        System.arraycopy(ids, 0, shrunk, 0, position);
+        System.arraycopy(ids, position + 1, shrunk, position, ids.length - position - 1);
+        postings.put(gram, shrunk);
+    }
+
+    private static int[] insert(int[] ids, int productId) {
+        int position = Arrays.binarySearch(ids, productId);
+        if (position >= 0) {
+            return ids;
+        }
+        position = -position - 1;
+        int[] grown = new int[ids.length + 1];
+        System.arraycopy(ids, 0, grown, 0, position);
+        grown[position] = productId;
+        System.arraycopy(ids, position, grown, position + 1, ids.length - position);
+        return grown;
+    }
+
+    // Distinct trigrams of already lowercased text
+    private static Set<Long> grams(String text) {
+        Set<Long> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            grams.add(gram(text, i));
+        }
+        return grams;
+    }
+
+    // The three characters at position i packed into a long
+    private static long gram(String text, int i) {
+        return ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+    }
+
+    /**
+     * A product with its searchable text, lowercased when indexed
+     */
+    private static final class Entry {
+        final Product product;
+        final String text;
+
+        Entry(Product product) {
+            this.product = product;
+            StringBuilder text = new StringBuilder();
+            text.append(product.getId()).append(FIELD_SEPARATOR);
+            if (product.getName() != null) text.append(product.getName().toLowerCase());
+            text.append(FIELD_SEPARATOR);
+            if (product.getDescription() != null) text.append(product.getDescription().toLowerCase());
+            text.append(FIELD_SEPARATOR);
+            if (product.getBarcode() != null) text.append(product.getBarcode().toLowerCase());
+            this.text = text.toString();
+        }
+
+        boolean matches(String needle, String category) {
+            return (category == null || category.equals(product.getCategory())) && text.contains(needle);
+        }
+    }
+
+    /**
+     * Open-addressing map from trigram to ID list used while building the index,
+     * avoiding a boxed key per trigram occurrence
+     */
+    private static final class GramTable {
+        private long[] keys = new long[1024];
+        private IntList[] lists = new IntList[1024];
+        private int size;
+
+        IntList listOf(long gram) {
+            int mask = keys.length - 1;
+            int slot = hash(gram) & mask;
+            while (lists[slot] != null) {
+                if (keys[slot] == gram) {
+                    return lists[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            IntList list = new IntList();
+            keys[slot] = gram;
+            lists[slot] = list;
+            if (++size * 2 > keys.length) {
+                grow();
+            }
+            return list;
+        }
+
+        Map<Long, int[]> toPostings() {
+            Map<Long, int[]> postings = new ConcurrentHashMap<>(size * 2);
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (lists[slot] != null) {
+                    postings.put(keys[slot], lists[slot].toSortedArray());
+                }
+            }
+            return postings;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            IntList[] oldLists = lists;
+            keys = new long[oldKeys.length * 2];
+            lists = new IntList[oldLists.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldLists[i] != null) {
+                    int slot = hash(oldKeys[i]) & mask;
+                    while (lists[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    lists[slot] = oldLists[i];
+                }
+            }
+        }
+
+        private static int hash(long gram) {
+            long h = gram * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    /**
+     * Growable int array used while building the index
+     */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        // Products are added one after another, so a repeated trigram repeats the last value
+        void addIfNotLast(int value) {
+            if (size > 0 && values[size - 1] == value) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toSortedArray() {
+            int[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
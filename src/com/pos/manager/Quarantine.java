@@ -0,0 +1,71 @@
+package com.pos.manager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+/**
+ * Damaged records set aside instead of being dropped.
+ *
+ * Each record is written unchanged to its own file, named after the data file and the
+ * position it came from, and listed with the reason in quarantine.log. A record found
+ * again by a later read (the data file is not rewritten just to remove it) is not
+ * quarantined twice; a different record at a position already used gets a numbered name.
+ */
+class Quarantine {
+
+    private static final String LOG_FILE = "quarantine.log";
+    private static final String RECORD_SUFFIX = ".bad";
+
+    private final Path directory;
+
+    Quarantine(String directory) {
+        this.directory = Paths.get(directory);
+    }
+
+    /**
+     * Set a damaged record aside. Returns false if it was already quarantined.
+     */
+    synchronized boolean add(String source, String position, String reason, byte[] data) {
+        String name = source.replaceAll("[^A-Za-z0-9._-]", "_") + "." + position;
+        try {
+            Path record = directory.resolve(name + RECORD_SUFFIX);
+            for (int n = 2; Files.exists(record); n++) {
+                if (Arrays.equals(Files.readAllBytes(record), data)) {
+                    return false;
+                }
+                record = directory.resolve(name + "-" + n + RECORD_SUFFIX);
+            }
+            System.err.println("Quarantining damaged record " + position + " of " + source + ": " + reason);
+            Files.createDirectories(directory);
+            Files.write(record, data);
+            String entry = LocalDateTime.now() + "\t" + source + "\t" + position + "\t" + reason
+                    + "\t" + record.getFileName() + System.lineSeparator();
+            Files.write(directory.resolve(LOG_FILE), entry.getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Could not quarantine record: " + e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Number of records in quarantine
+     */
+    synchronized int size() {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        int count = 0;
+        try (DirectoryStream<Path> records = Files.newDirectoryStream(directory, "*" + RECORD_SUFFIX)) {
+            for (Path ignored : records) {
+                count++;
+            }
+        } catch (IOException e) {
+            System.err.println("Could not list quarantined records: " + e.getMessage());
+        }
+        return count;
+    }
+}
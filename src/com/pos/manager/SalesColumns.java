@@ -0,0 +1,458 @@
+package com.pos.manager;
+
+import com.pos.model.Transaction;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Fixed-width columns of sales figures in memory-mapped files, so analytics run as
+ * primitive loops over mapped memory instead of walking transaction objects, and cover
+ * the whole history without loading it onto the heap.
+ *
+ * sales.col holds a 64-byte header and one 32-byte row per transaction in the order
+ * they were appended: time key, subtotal, tax, total, payment method, first item row
+ * and item count. items.col holds one 16-byte row per sold line: product id, quantity,
+ * line total and category. Money is in cents; payment methods and categories are ids
+ * into a string table kept in strings.dat.
+ *
+ * The columns are derived data: rows are appended as sales are recorded and forced to disk
+ * before the header counts are updated and forced in turn, so after a crash the header
+ * never counts rows that did not reach the disk. The columns are then either complete or
+ * behind the history, in which case the owner rebuilds them.
+ *
+ * Readers take an immutable {@link View} and never lock; a single writer appends. Rows a
+ * view counts are never written again: a reset starts a new generation of files
+ * (sales-1.col, items-1.col, strings-1.dat and so on; the first generation has no number)
+ * instead of reusing the rows, and views of the old generation keep reading its files.
+ * Files cannot be deleted while mapped on every platform, so older generations are
+ * deleted when possible and otherwise the next time the columns are opened.
+ */
+class SalesColumns {
+
+    private static final int MAGIC = 0x47504F43; // "GPOC"
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int ROW_COUNT = 8;
+    private static final int ITEM_COUNT = 12;
+    private static final int STRING_COUNT = 16;
+    private static final int SORTED = 20;
+    private static final int GRAND_TOTAL = 24;
+
+    private static final int SALE_ROW = 32;
+    private static final int ITEM_ROW = 16;
+    private static final int INITIAL_ROWS = 4096;
+
+    private static final int NO_STRING = -1;
+
+    private final Path directory;
+    private int generation;
+    private Path salesPath;
+    private Path itemsPath;
+    private Path stringsPath;
+
+    private MappedByteBuffer sales;
+    private MappedByteBuffer items;
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private int writtenStrings; // strings already in strings.dat
+    private volatile View current;
+
+    SalesColumns(String directory) {
+        this.directory = Paths.get(directory);
+        useGeneration(0);
+    }
+
+    /**
+     * Map the newest generation of column files, creating them if needed, and delete the
+     * older ones. Columns that cannot be read are reset.
+     */
+    synchronized void open() throws IOException {
+        Files.createDirectories(directory);
+        useGeneration(newestGeneration());
+        deleteOtherGenerations();
+        boolean existed = Files.exists(salesPath);
+        sales = map(salesPath, Math.max(existed ? Files.size(salesPath) : 0, HEADER_SIZE + (long) INITIAL_ROWS * SALE_ROW));
+        items = map(itemsPath, Math.max(Files.exists(itemsPath) ? Files.size(itemsPath) : 0, (long) INITIAL_ROWS * ITEM_ROW));
+
+        strings.clear();
+        stringIds.clear();
+        if (existed && sales.getInt(0) == MAGIC && sales.getInt(4) == VERSION && loadStrings()) {
+            publish();
+        } else {
+            reset();
+        }
+    }
+
+    /**
+     * Drop every row, by starting a new generation of files
+     */
+    synchronized void reset() throws IOException {
+        useGeneration(generation + 1);
+        Files.deleteIfExists(salesPath); // left over from a run that could not delete it
+        Files.deleteIfExists(itemsPath);
+        sales = map(salesPath, HEADER_SIZE + (long) INITIAL_ROWS * SALE_ROW);
+        items = map(itemsPath, (long) INITIAL_ROWS * ITEM_ROW);
+        strings.clear();
+        stringIds.clear();
+        writeStrings();
+        sales.putInt(0, MAGIC);
+        sales.putInt(4, VERSION);
+        sales.putInt(ROW_COUNT, 0);
+        sales.putInt(ITEM_COUNT, 0);
+        sales.putInt(STRING_COUNT, 0);
+        sales.putInt(SORTED, 1);
+        sales.putLong(GRAND_TOTAL, 0);
+        sales.force();
+        publish();
+        deleteOtherGenerations();
+    }
+
+    /**
+     * Whether the columns hold exactly the given number of transactions and grand total
+     */
+    boolean matches(int transactionCount, long grandTotal) {
+        View view = current;
+        return view != null && view.rowCount == transactionCount && view.grandTotal == grandTotal;
+    }
+
+    /**
+     * Append transactions, with the category of each line as given by categoryOf
+     */
+    synchronized void append(Collection<Transaction> transactions,
+                             Function<Transaction.TransactionItem, String> categoryOf) throws IOException {
+        if (transactions.isEmpty()) return;
+
+        int rowCount = sales.getInt(ROW_COUNT);
+        int itemCount = sales.getInt(ITEM_COUNT);
+        boolean sorted = sales.getInt(SORTED) != 0;
+        long grandTotal = sales.getLong(GRAND_TOTAL);
+        long lastKey = rowCount > 0 ? sales.getLong(saleOffset(rowCount - 1)) : Long.MIN_VALUE;
+
+        for (Transaction transaction : transactions) {
+            List<Transaction.TransactionItem> lines = transaction.getItems();
+            ensureCapacity(rowCount + 1, itemCount + lines.size());
+
+            long key = TransactionIndex.keyOf(transaction.getTimestamp());
+            sorted &= key >= lastKey;
+            lastKey = Math.max(lastKey, key);
+
+            int row = saleOffset(rowCount);
+            sales.putLong(row, key);
+            sales.putInt(row + 8, transaction.getSubtotal());
+            sales.putInt(row + 12, transaction.getTax());
+            sales.putInt(row + 16, transaction.getTotal());
+            sales.putInt(row + 20, idOf(transaction.getPaymentMethod()));
+            sales.putInt(row + 24, itemCount);
+            sales.putInt(row + 28, lines.size());
+            for (Transaction.TransactionItem line : lines) {
+                int item = itemCount * ITEM_ROW;
+                items.putInt(item, line.getProductId());
+                items.putInt(item + 4, line.getQuantity());
+                items.putInt(item + 8, line.getTotalPrice());
+                items.putInt(item + 12, idOf(categoryOf.apply(line)));
+                itemCount++;
+            }
+            rowCount++;
+            grandTotal += transaction.getTotal();
+        }
+
+        // New strings and rows must be durable before the header counts them
+        if (strings.size() > writtenStrings) {
+            writeStrings();
+        }
+        items.force();
+        sales.force();
+        sales.putInt(STRING_COUNT, strings.size());
+        sales.putInt(SORTED, sorted ? 1 : 0);
+        sales.putLong(GRAND_TOTAL, grandTotal);
+        sales.putInt(ITEM_COUNT, itemCount);
+        sales.putInt(ROW_COUNT, rowCount);
+        sales.force();
+        publish();
+    }
+
+    /**
+     * The current rows, as a consistent view for any number of queries
+     */
+    View view() {
+        return current;
+    }
+
+    private void publish() {
+        current = new View(sales, items, sales.getInt(ROW_COUNT), sales.getInt(SORTED) != 0,
+                sales.getLong(GRAND_TOTAL), Collections.unmodifiableList(new ArrayList<>(strings)));
+    }
+
+    private int idOf(String value) {
+        if (value == null) {
+            return NO_STRING;
+        }
+        Integer id = stringIds.get(value);
+        if (id == null) {
+            id = strings.size();
+            strings.add(value);
+            stringIds.put(value, id);
+        }
+        return id;
+    }
+
+    // Grow by remapping a larger region; views holding the old mapping stay valid for their rows.
+    // Rows already written through the old mapping are forced first, as only the new one is forced later.
+    private void ensureCapacity(int rows, int itemRows) throws IOException {
+        if ((long) saleOffset(0) + (long) rows * SALE_ROW > sales.capacity()) {
+            sales.force();
+            sales = map(salesPath, HEADER_SIZE + Math.max(2L * (sales.capacity() - HEADER_SIZE), (long) rows * SALE_ROW));
+        }
+        if ((long) itemRows * ITEM_ROW > items.capacity()) {
+            items.force();
+            items = map(itemsPath, Math.max(2L * items.capacity(), (long) itemRows * ITEM_ROW));
+        }
+    }
+
+    private static MappedByteBuffer map(Path path, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Sales column file " + path + " is full");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private void useGeneration(int generation) {
+        this.generation = generation;
+        String suffix = generation == 0 ? "" : "-" + generation;
+        salesPath = directory.resolve("sales" + suffix + ".col");
+        itemsPath = directory.resolve("items" + suffix + ".col");
+        stringsPath = directory.resolve("strings" + suffix + ".dat");
+    }
+
+    private int newestGeneration() throws IOException {
+        int newest = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "sales-*.col")) {
+            for (Path file : files) {
+                Integer number = generationOf(file.getFileName().toString(), "sales", ".col");
+                if (number != null) {
+                    newest = Math.max(newest, number);
+                }
+            }
+        }
+        return newest;
+    }
+
+    // Files of generations before the current one; those still mapped somewhere are left for the next open
+    private void deleteOtherGenerations() {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                Integer number = null;
+                if (name.startsWith("sales")) {
+                    number = generationOf(name, "sales", ".col");
+                } else if (name.startsWith("items")) {
+                    number = generationOf(name, "items", ".col");
+                } else if (name.startsWith("strings")) {
+                    number = generationOf(name, "strings", ".dat");
+                }
+                if (number != null && number != generation) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        // Still mapped on this platform
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error removing old sales columns: " + e.getMessage());
+        }
+    }
+
+    // Generation number in a name of the form prefix[-n]suffix, or null for other names
+    private static Integer generationOf(String name, String prefix, String suffix) {
+        if (!name.startsWith(prefix) || !name.endsWith(suffix)) {
+            return null;
+        }
+        String middle = name.substring(prefix.length(), name.length() - suffix.length());
+        if (middle.isEmpty()) {
+            return 0;
+        }
+        if (!middle.startsWith("-")) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(middle.substring(1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private boolean loadStrings() {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(stringsPath))) {
+            for (String value : DataCodec.readStrings(in)) {
+                stringIds.put(value, strings.size());
+                strings.add(value);
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        writtenStrings = strings.size();
+        return strings.size() >= sales.getInt(STRING_COUNT);
+    }
+
+    private void writeStrings() throws IOException {
+        List<String> table = new ArrayList<>(strings);
+        new FileGroupCommit()
+            .add(stringsPath.toString(), out -> DataCodec.writeStrings(out, table))
+            .commit();
+        writtenStrings = table.size();
+    }
+
+    private static int saleOffset(int row) {
+        return HEADER_SIZE + row * SALE_ROW;
+    }
+
+    /**
+     * Immutable view of the columns at one point in time
+     */
+    static final class View {
+        private final MappedByteBuffer sales;
+        private final MappedByteBuffer items;
+        private final int rowCount;
+        private final boolean sorted;
+        private final long grandTotal;
+        private final List<String> strings;
+
+        private View(MappedByteBuffer sales, MappedByteBuffer items, int rowCount, boolean sorted,
+                     long grandTotal, List<String> strings) {
+            this.sales = sales;
+            this.items = items;
+            this.rowCount = rowCount;
+            this.sorted = sorted;
+            this.grandTotal = grandTotal;
+            this.strings = strings;
+        }
+
+        int rowCount() {
+            return rowCount;
+        }
+
+        /**
+         * Whether rows are in time order, so ranges can be found by binary search.
+         * Rows appended out of order (e.g. after the clock was set back) clear this.
+         */
+        boolean isSorted() {
+            return sorted;
+        }
+
+        /**
+         * Rows [from, to) with start <= time key <= end when sorted; all rows otherwise,
+         * in which case {@link #inRange} has to be checked per row
+         */
+        int[] positions(long startKey, long endKey) {
+            if (!sorted) {
+                return new int[] {0, rowCount};
+            }
+            int from = lowerBound(startKey);
+            int to = upperBound(endKey);
+            return new int[] {from, Math.max(from, to)};
+        }
+
+        boolean inRange(int row, long startKey, long endKey) {
+            long key = key(row);
+            return key >= startKey && key <= endKey;
+        }
+
+        long key(int row) {
+            return sales.getLong(saleOffset(row));
+        }
+
+        int subtotal(int row) {
+            return sales.getInt(saleOffset(row) + 8);
+        }
+
+        int tax(int row) {
+            return sales.getInt(saleOffset(row) + 12);
+        }
+
+        int total(int row) {
+            return sales.getInt(saleOffset(row) + 16);
+        }
+
+        int paymentMethod(int row) {
+            return sales.getInt(saleOffset(row) + 20);
+        }
+
+        int firstItem(int row) {
+            return sales.getInt(saleOffset(row) + 24);
+        }
+
+        int itemCount(int row) {
+            return sales.getInt(saleOffset(row) + 28);
+        }
+
+        int productId(int item) {
+            return items.getInt(item * ITEM_ROW);
+        }
+
+        int quantity(int item) {
+            return items.getInt(item * ITEM_ROW + 4);
+        }
+
+        int lineTotal(int item) {
+            return items.getInt(item * ITEM_ROW + 8);
+        }
+
+        int category(int item) {
+            return items.getInt(item * ITEM_ROW + 12);
+        }
+
+        /**
+         * Number of string ids; ids run from 0 to this minus one
+         */
+        int stringCount() {
+            return strings.size();
+        }
+
+        /**
+         * The string for an id, or null for {@link #NO_STRING}
+         */
+        String string(int id) {
+            return id == NO_STRING ? null : strings.get(id);
+        }
+
+        // First row with key >= target
+        private int lowerBound(long target) {
+            int low = 0;
+            int high = rowCount;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (key(mid) < target) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        // First row with key > target
+        private int upperBound(long target) {
+            int low = 0;
+            int high = rowCount;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (key(mid) <= target) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
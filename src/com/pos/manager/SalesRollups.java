@@ -0,0 +1,133 @@
+package com.pos.manager;
+
+import com.pos.model.SalesSummary;
+import com.pos.model.Transaction;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Per-day sales rollups maintained incrementally as transactions are added.
+ * Report queries read one entry per day instead of scanning every transaction.
+ *
+ * Safe to read while a single writer records sales: a day's summary is never changed
+ * once stored, recording a sale stores an updated copy instead.
+ */
+class SalesRollups {
+
+    private final ConcurrentSkipListMap<LocalDate, SalesSummary> days = new ConcurrentSkipListMap<>();
+    private volatile int transactionCount;
+    private volatile long grandTotal; // in cents
+
+    /**
+     * Fold one transaction into its day
+     */
+    synchronized void record(Transaction transaction) {
+        LocalDate date = transaction.getTimestamp().toLocalDate();
+        SalesSummary day = new SalesSummary();
+        SalesSummary previous = days.get(date);
+        if (previous != null) {
+            day.add(previous);
+        }
+        day.record(transaction);
+        days.put(date, day);
+        transactionCount++;
+        grandTotal += transaction.getTotal();
+    }
+
+    /**
+     * Recompute every day from the given transactions
+     */
+    synchronized void rebuild(Collection<Transaction> transactions) {
+        clear();
+        for (Transaction transaction : transactions) {
+            record(transaction);
+        }
+    }
+
+    /**
+     * Recompute one day from all of its transactions, e.g. after some of them were removed
+     */
+    synchronized void replaceDay(LocalDate date, Collection<Transaction> transactions) {
+        SalesSummary previous = days.remove(date);
+        if (previous != null) {
+            transactionCount -= previous.getTransactionCount();
+            grandTotal -= previous.getTotal();
+        }
+        if (transactions.isEmpty()) {
+            return;
+        }
+        SalesSummary day = new SalesSummary();
+        for (Transaction transaction : transactions) {
+            day.record(transaction);
+        }
+        days.put(date, day);
+        transactionCount += day.getTransactionCount();
+        grandTotal += day.getTotal();
+    }
+
+    /**
+     * An independent copy of the current days; day summaries are never changed, so they are shared
+     */
+    synchronized SalesRollups copy() {
+        SalesRollups copy = new SalesRollups();
+        copy.days.putAll(days);
+        copy.transactionCount = transactionCount;
+        copy.grandTotal = grandTotal;
+        return copy;
+    }
+
+    synchronized void clear() {
+        days.clear();
+        transactionCount = 0;
+        grandTotal = 0;
+    }
+
+    /**
+     * Store a loaded day (used by the codec)
+     */
+    synchronized void putDay(LocalDate date, SalesSummary summary) {
+        days.put(date, summary);
+        transactionCount += summary.getTransactionCount();
+        grandTotal += summary.getTotal();
+    }
+
+    /**
+     * Days with sales between from and to inclusive (either bound may be null), oldest first
+     */
+    NavigableMap<LocalDate, SalesSummary> range(LocalDate from, LocalDate to) {
+        if (days.isEmpty()) {
+            return Collections.emptyNavigableMap();
+        }
+        LocalDate low = from != null ? from : days.firstKey();
+        LocalDate high = to != null ? to : days.lastKey();
+        if (low.isAfter(high)) {
+            return Collections.emptyNavigableMap();
+        }
+        return days.subMap(low, true, high, true);
+    }
+
+    /**
+     * Combined figures of the days between from and to inclusive
+     */
+    SalesSummary sum(LocalDate from, LocalDate to) {
+        SalesSummary summary = new SalesSummary();
+        for (SalesSummary day : range(from, to).values()) {
+            summary.add(day);
+        }
+        return summary;
+    }
+
+    NavigableMap<LocalDate, SalesSummary> allDays() {
+        return Collections.unmodifiableNavigableMap(days);
+    }
+
+    int getTransactionCount() {
+        return transactionCount;
+    }
+
+    long getGrandTotal() {
+        return grandTotal;
+    }
+}
@@ -0,0 +1,29 @@
+package com.pos.manager;
+
+/**
+ * Progress and cancellation hook passed to long-running data operations such as exports
+ */
+public interface TaskProgress {
+
+    /** For callers that neither show progress nor cancel */
+    TaskProgress NONE = new TaskProgress() {
+        @Override
+        public void setPercent(int percent) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    /**
+     * Report how far the operation is, from 0 to 100
+     */
+    void setPercent(int percent);
+
+    /**
+     * Whether the caller asked the operation to stop
+     */
+    boolean isCancelled();
+}
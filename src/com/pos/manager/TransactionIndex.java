@@ -0,0 +1,300 @@
+package com.pos.manager;
+
+import com.pos.model.Transaction;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Transactions kept in timestamp order in a sorted array with a parallel array of
+ * primitive time keys, so date-range queries are two binary searches plus a copy of
+ * the matching slice (O(log n + k)) and never need a per-call sort.
+ * New sales arrive in time order and are appended in amortized O(1).
+ *
+ * Readers work on an immutable {@link Snapshot} published through a volatile field and
+ * never take a lock. Changes are made by one writer at a time: an append fills the slot
+ * past the end of every published snapshot and then publishes a longer snapshot over the
+ * same arrays; any other change copies the arrays first. The id map is shared the same
+ * way, each entry tagged with the version that added it, so a snapshot only finds the
+ * transactions it holds.
+ */
+class TransactionIndex {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private volatile Snapshot current = new Snapshot(
+            new Transaction[INITIAL_CAPACITY], new long[INITIAL_CAPACITY], 0, new ConcurrentHashMap<>(), 0);
+
+    /**
+     * The current contents, as a consistent view for any number of queries
+     */
+    Snapshot snapshot() {
+        return current;
+    }
+
+    /**
+     * Add one transaction, appending when it is the newest (the normal case for a sale)
+     */
+    synchronized boolean add(Transaction transaction) {
+        Snapshot s = current;
+        long key = keyOf(transaction.getTimestamp());
+        boolean inOrder = s.size == 0 || key >= s.keys[s.size - 1];
+
+        Transaction[] entries = s.entries;
+        long[] keys = s.keys;
+        int position = s.size;
+        if (!inOrder || s.size == entries.length) {
+            // Copy so that slots seen by published snapshots never change
+            int capacity = s.size == entries.length ? entries.length * 2 : entries.length;
+            entries = Arrays.copyOf(entries, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            if (!inOrder) {
+                position = upperBound(keys, s.size, key);
+                System.arraycopy(entries, position, entries, position + 1, s.size - position);
+                System.arraycopy(keys, position, keys, position + 1, s.size - position);
+            }
+        }
+        entries[position] = transaction;
+        keys[position] = key;
+        s.byId.putIfAbsent(transaction.getTransactionId(), new IdEntry(transaction, s.version + 1));
+        current = new Snapshot(entries, keys, s.size + 1, s.byId, s.version + 1);
+        return true;
+    }
+
+    /**
+     * Add many transactions with a single sort instead of one insertion each
+     */
+    synchronized void addAll(Collection<Transaction> transactions) {
+        if (transactions.isEmpty()) return;
+
+        Snapshot s = current;
+        List<Transaction> merged = new ArrayList<>(s.size + transactions.size());
+        merged.addAll(Arrays.asList(s.entries).subList(0, s.size));
+        merged.addAll(transactions);
+        merged.sort(Comparator.comparing(Transaction::getTimestamp));
+        rebuild(merged);
+    }
+
+    /**
+     * Remove every transaction matching the filter
+     */
+    synchronized boolean removeIf(Predicate<Transaction> filter) {
+        Snapshot s = current;
+        List<Transaction> kept = new ArrayList<>(s.size);
+        for (int i = 0; i < s.size; i++) {
+            if (!filter.test(s.entries[i])) {
+                kept.add(s.entries[i]);
+            }
+        }
+        if (kept.size() == s.size) {
+            return false;
+        }
+        rebuild(kept);
+        return true;
+    }
+
+    synchronized void clear() {
+        rebuild(Collections.emptyList());
+    }
+
+    int size() {
+        return current.size();
+    }
+
+    boolean isEmpty() {
+        return current.isEmpty();
+    }
+
+    Transaction getById(int transactionId) {
+        return current.getById(transactionId);
+    }
+
+    /**
+     * All transactions, oldest first
+     */
+    List<Transaction> all() {
+        return current.all();
+    }
+
+    /**
+     * Transactions with start <= timestamp <= end (either bound may be null), newest first
+     */
+    List<Transaction> range(LocalDateTime start, LocalDateTime end) {
+        return current.range(start, end);
+    }
+
+    /**
+     * Sum of transaction totals in the range, in cents, without building a result list
+     */
+    long sumTotals(LocalDateTime start, LocalDateTime end) {
+        return current.sumTotals(start, end);
+    }
+
+    private void rebuild(List<Transaction> sorted) {
+        int capacity = Math.max(INITIAL_CAPACITY, sorted.size() + sorted.size() / 2);
+        Transaction[] entries = new Transaction[capacity];
+        long[] keys = new long[capacity];
+        Map<Integer, IdEntry> byId = new ConcurrentHashMap<>();
+        long version = current.version + 1;
+        int size = 0;
+        for (Transaction transaction : sorted) {
+            entries[size] = transaction;
+            keys[size] = keyOf(transaction.getTimestamp());
+            byId.putIfAbsent(transaction.getTransactionId(), new IdEntry(transaction, version));
+            size++;
+        }
+        current = new Snapshot(entries, keys, size, byId, version);
+    }
+
+    // First position with key >= target
+    private static int lowerBound(long[] keys, int size, long target) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // First position with key > target
+    private static int upperBound(long[] keys, int size, long target) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] <= target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Nanoseconds of the local wall-clock time; exact, and fits in a long until the year 2262
+    static long keyOf(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + timestamp.getNano();
+    }
+
+    // A transaction in the id map and the version of the index that added it
+    private static final class IdEntry {
+        final Transaction transaction;
+        final long addedIn;
+
+        IdEntry(Transaction transaction, long addedIn) {
+            this.transaction = transaction;
+            this.addedIn = addedIn;
+        }
+    }
+
+    /**
+     * Immutable view of the index at one point in time.
+     * Only the first size slots of the arrays belong to the snapshot.
+     */
+    static final class Snapshot {
+        private final Transaction[] entries;
+        private final long[] keys;
+        private final int size;
+        private final Map<Integer, IdEntry> byId;
+        private final long version;
+
+        private Snapshot(Transaction[] entries, long[] keys, int size, Map<Integer, IdEntry> byId, long version) {
+            this.entries = entries;
+            this.keys = keys;
+            this.size = size;
+            this.byId = byId;
+            this.version = version;
+        }
+
+        /**
+         * Increases with every change to the index
+         */
+        long version() {
+            return version;
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * The transaction with this id, if this snapshot holds it (later appends share the map)
+         */
+        Transaction getById(int transactionId) {
+            IdEntry entry = byId.get(transactionId);
+            return entry != null && entry.addedIn <= version ? entry.transaction : null;
+        }
+
+        /**
+         * All transactions, oldest first
+         */
+        List<Transaction> all() {
+            return new ArrayList<>(Arrays.asList(entries).subList(0, size));
+        }
+
+        /**
+         * Transactions with start <= timestamp <= end (either bound may be null), newest first
+         */
+        List<Transaction> range(LocalDateTime start, LocalDateTime end) {
+            int[] positions = positions(start, end);
+
+            List<Transaction> result = new ArrayList<>(positions[1] - positions[0]);
+            for (int i = positions[1] - 1; i >= positions[0]; i--) {
+                result.add(entries[i]);
+            }
+            return result;
+        }
+
+        /**
+         * Sum of transaction totals in the range, in cents, without building a result list
+         */
+        long sumTotals(LocalDateTime start, LocalDateTime end) {
+            int[] positions = positions(start, end);
+
+            long sum = 0;
+            for (int i = positions[0]; i < positions[1]; i++) {
+                sum += entries[i].getTotal();
+            }
+            return sum;
+        }
+
+        /**
+         * Positions [from, to) of the transactions with start <= timestamp <= end.
+         * Within one snapshot, equal positions select the same transactions.
+         */
+        int[] positions(LocalDateTime start, LocalDateTime end) {
+            int from = start == null ? 0 : lowerBound(keys, size, keyOf(start));
+            int to = end == null ? size : upperBound(keys, size, keyOf(end));
+            return new int[] {from, Math.max(from, to)};
+        }
+
+        /**
+         * Transaction at a position, oldest first
+         */
+        Transaction get(int position) {
+            return entries[position];
+        }
+
+        /**
+         * Visit the transactions at positions [from, to), oldest first, without copying them
+         */
+        void forEach(int from, int to, Consumer<Transaction> action) {
+            for (int i = from; i < to; i++) {
+                action.accept(entries[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.pos.manager;
+
+import com.pos.model.Transaction;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Append-only write-ahead journal for completed transactions.
+ * Each record is stored as a 4-byte length prefix followed by a {@link DataCodec} transaction record,
+ * so a sale costs a single small append instead of rewriting the whole transaction file.
+ * The journal is rotated aside while a snapshot is compacted and discarded afterwards.
+ */
+class TransactionJournal implements Closeable {
+
+    private final Path journalPath;
+    private final Path rotatedPath;
+    private final Quarantine quarantine;
+    private FileChannel channel;
+    private int recordCount;
+
+    TransactionJournal(String journalFile, Quarantine quarantine) {
+        this.journalPath = Paths.get(journalFile);
+        this.rotatedPath = Paths.get(journalFile + ".compacting");
+        this.quarantine = quarantine;
+    }
+
+    /**
+     * Read every intact record from the rotated journal (if a previous compaction did not finish)
+     * and the live journal. A complete record that fails its checksum is quarantined and skipped.
+     * A torn record at the tail of the live journal is quarantined and cut off so that
+     * subsequent appends start on a clean record boundary.
+     */
+    synchronized List<Transaction> replay() throws IOException {
+        List<Transaction> replayed = new ArrayList<>();
+        if (Files.exists(rotatedPath)) {
+            readRecords(rotatedPath, replayed);
+        }
+
+        recordCount = 0;
+        if (Files.exists(journalPath)) {
+            int before = replayed.size();
+            long validLength = readRecords(journalPath, replayed);
+            recordCount = replayed.size() - before;
+
+            if (validLength < Files.size(journalPath)) {
+                System.err.println("Truncating torn journal record at offset " + validLength);
+                quarantineTail(validLength);
+                try (FileChannel fc = FileChannel.open(journalPath, StandardOpenOption.WRITE)) {
+                    fc.truncate(validLength);
+                }
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * Open the live journal for appending
+     */
+    synchronized void open() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(journalPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+    }
+
+    /**
+     * Append one transaction record and force it to disk
+     */
+    synchronized void append(Transaction transaction) throws IOException {
+        open();
+        byte[] payload = encode(transaction);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + payload.length);
+        buffer.putInt(payload.length).put(payload).flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        recordCount++;
+    }
+
+    /**
+     * Move the live journal aside so a snapshot can be written while new sales keep appending.
+     * If an earlier rotated journal is still present its records are kept and the live records
+     * are appended to it.
+     */
+    synchronized void rotate() throws IOException {
+        close();
+        if (Files.exists(journalPath)) {
+            if (Files.exists(rotatedPath)) {
+                try (FileChannel target = FileChannel.open(rotatedPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                     FileChannel source = FileChannel.open(journalPath, StandardOpenOption.READ)) {
+                    long position = 0;
+                    long size = source.size();
+                    while (position < size) {
+                        position += source.transferTo(position, size - position, target);
+                    }
+                    target.force(false);
+                }
+                Files.delete(journalPath);
+            } else {
+                Files.move(journalPath, rotatedPath, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        recordCount = 0;
+        open();
+    }
+
+    /**
+     * Drop the rotated journal once its records are contained in a durable snapshot
+     */
+    synchronized void discardRotated() throws IOException {
+        Files.deleteIfExists(rotatedPath);
+    }
+
+    /**
+     * Remove all journal records (used when the snapshot is replaced wholesale)
+     */
+    synchronized void reset() throws IOException {
+        close();
+        Files.deleteIfExists(rotatedPath);
+        Files.deleteIfExists(journalPath);
+        recordCount = 0;
+    }
+
+    synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    boolean hasRotatedJournal() {
+        return Files.exists(rotatedPath);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private long readRecords(Path path, List<Transaction> sink) throws IOException {
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0 || length > Files.size(path) - validLength - 4) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                try {
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                try {
+                    sink.add(decode(payload));
+                } catch (ClassNotFoundException | IOException e) {
+                    // The record is complete, so the records after it can still be read
+                    quarantine.add(path.getFileName().toString(), "offset-" + validLength, e.getMessage(), payload);
+                }
+                validLength += 4 + length;
+            }
+        }
+        return validLength;
+    }
+
+    // Keep the bytes that are about to be cut off the live journal
+    private void quarantineTail(long validLength) {
+        try (FileChannel fc = FileChannel.open(journalPath, StandardOpenOption.READ)) {
+            ByteBuffer tail = ByteBuffer.allocate((int) Math.min(fc.size() - validLength, 16 * 1024 * 1024));
+            while (tail.hasRemaining() && fc.read(tail, validLength + tail.position()) > 0) {
+                // Keep reading
+            }
+            quarantine.add(journalPath.getFileName().toString(), "offset-" + validLength,
+                    "torn record at the end of the journal", Arrays.copyOf(tail.array(), tail.position()));
+        } catch (IOException e) {
+            System.err.println("Could not quarantine torn journal record: " + e.getMessage());
+        }
+    }
+
+    private byte[] encode(Transaction transaction) throws IOException {
+        return DataCodec.encodeTransaction(transaction);
+    }
+
+    /**
+     * Decode a record, accepting records written with Java serialization by older versions
+     */
+    private Transaction decode(byte[] payload) throws IOException, ClassNotFoundException {
+        InputStream in = new ByteArrayInputStream(payload);
+        if (DataCodec.isLegacyFormat(in)) {
+            try (ObjectInputStream ois = new ObjectInputStream(in)) {
+                return (Transaction) ois.readObject();
+            }
+        }
+        return DataCodec.decodeTransaction(payload);
+    }
+}
@@ -0,0 +1,208 @@
+package com.pos.manager;
+
+import com.pos.model.Transaction;
+
+import java.io.*;
+import java.nio.file.*;
+import java.time.YearMonth;
+import java.util.*;
+
+/**
+ * Transaction history stored as one {@link DataCodec} transaction file per calendar month,
+ * plus a small index listing each month's transaction count, total and ID range.
+ * The index is all that is read at startup; a month's transactions are read only when
+ * something asks for them, so startup cost does not grow with the length of the history.
+ *
+ * Changed months and the index are replaced in one {@link FileGroupCommit}, the index last,
+ * so the index never refers to a segment that was not written. Damaged records found
+ * while reading a month are put in {@link Quarantine} and the rest of the month is read.
+ */
+class TransactionSegments {
+
+    private static final String SEGMENT_PREFIX = "sales-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    private final Path directory;
+    private final Path indexPath;
+    private final Quarantine quarantine;
+    private volatile NavigableMap<YearMonth, Segment> segments = Collections.emptyNavigableMap();
+
+    TransactionSegments(String directory, String indexFile, Quarantine quarantine) {
+        this.directory = Paths.get(directory);
+        this.indexPath = Paths.get(indexFile);
+        this.quarantine = quarantine;
+    }
+
+    /**
+     * Whether the history has been stored in segments yet
+     */
+    boolean exists() {
+        return Files.exists(indexPath);
+    }
+
+    /**
+     * Read the segment index (not the segments themselves)
+     */
+    synchronized void loadIndex() throws IOException {
+        NavigableMap<YearMonth, Segment> loaded = new TreeMap<>();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(indexPath))) {
+            for (Segment segment : DataCodec.readSegmentIndex(in)) {
+                loaded.put(segment.month, segment);
+            }
+        }
+        segments = Collections.unmodifiableNavigableMap(loaded);
+    }
+
+    /**
+     * Stored months, oldest first
+     */
+    NavigableMap<YearMonth, Segment> segments() {
+        return segments;
+    }
+
+    /**
+     * Months whose segment holds transaction IDs in the range of the given ID
+     */
+    List<YearMonth> monthsContaining(int transactionId) {
+        List<YearMonth> months = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            if (transactionId >= segment.minId && transactionId <= segment.maxId) {
+                months.add(segment.month);
+            }
+        }
+        return months;
+    }
+
+    /**
+     * Highest transaction ID in any segment, or 0 if there are none
+     */
+    int maxTransactionId() {
+        int max = 0;
+        for (Segment segment : segments.values()) {
+            max = Math.max(max, segment.maxId);
+        }
+        return max;
+    }
+
+    /**
+     * Readable transactions of one month, oldest first
+     */
+    List<Transaction> read(YearMonth month) throws IOException {
+        List<DataCodec.DamagedRecord> damaged = new ArrayList<>();
+        List<Transaction> transactions;
+        Path file = fileOf(month);
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            transactions = DataCodec.readTransactions(in, damaged);
+        }
+        for (DataCodec.DamagedRecord record : damaged) {
+            quarantine.add(directory.getFileName() + "/" + file.getFileName(), "record-" + record.position,
+                    record.reason, record.data);
+        }
+        return transactions;
+    }
+
+    /**
+     * Replace the given months with their new contents; a month with no transactions is removed
+     */
+    synchronized void write(Map<YearMonth, List<Transaction>> months) throws IOException {
+        NavigableMap<YearMonth, Segment> updated = new TreeMap<>(segments);
+        List<YearMonth> removed = new ArrayList<>();
+        FileGroupCommit commit = new FileGroupCommit();
+        for (Map.Entry<YearMonth, List<Transaction>> entry : months.entrySet()) {
+            YearMonth month = entry.getKey();
+            List<Transaction> contents = entry.getValue();
+            if (contents.isEmpty()) {
+                if (updated.remove(month) != null) {
+                    removed.add(month);
+                }
+                continue;
+            }
+            updated.put(month, Segment.of(month, contents));
+            commit.add(fileOf(month).toString(), out -> DataCodec.writeTransactions(out, contents));
+        }
+        List<Segment> index = new ArrayList<>(updated.values());
+        commit.add(indexPath.toString(), out -> DataCodec.writeSegmentIndex(out, index));
+
+        Files.createDirectories(directory);
+        commit.commit();
+        segments = Collections.unmodifiableNavigableMap(updated);
+
+        // No longer referenced by the index, so a failed delete only leaves an orphan behind
+        for (YearMonth month : removed) {
+            Files.deleteIfExists(fileOf(month));
+        }
+    }
+
+    /**
+     * Replace the whole history with the given transactions
+     */
+    synchronized void replaceAll(Collection<Transaction> transactions) throws IOException {
+        Map<YearMonth, List<Transaction>> months = new TreeMap<>();
+        for (YearMonth month : segments.keySet()) {
+            months.put(month, Collections.emptyList());
+        }
+        for (Transaction transaction : transactions) {
+            YearMonth month = YearMonth.from(transaction.getTimestamp());
+            List<Transaction> contents = months.get(month);
+            if (contents == null || contents.isEmpty()) {
+                contents = new ArrayList<>();
+                months.put(month, contents);
+            }
+            contents.add(transaction);
+        }
+        for (List<Transaction> contents : months.values()) {
+            contents.sort(Comparator.comparing(Transaction::getTimestamp));
+        }
+        write(months);
+    }
+
+    /**
+     * Delete the index and every segment file (used before files are restored from a backup)
+     */
+    synchronized void delete() throws IOException {
+        Files.deleteIfExists(indexPath);
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+        }
+        segments = Collections.emptyNavigableMap();
+    }
+
+    private Path fileOf(YearMonth month) {
+        return directory.resolve(SEGMENT_PREFIX + month + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Index entry for one month
+     */
+    static final class Segment {
+        final YearMonth month;
+        final int transactionCount;
+        final long total; // in cents
+        final int minId;
+        final int maxId;
+
+        Segment(YearMonth month, int transactionCount, long total, int minId, int maxId) {
+            this.month = month;
+            this.transactionCount = transactionCount;
+            this.total = total;
+            this.minId = minId;
+            this.maxId = maxId;
+        }
+
+        static Segment of(YearMonth month, List<Transaction> transactions) {
+            long total = 0;
+            int minId = Integer.MAX_VALUE;
+            int maxId = 0;
+            for (Transaction transaction : transactions) {
+                total += transaction.getTotal();
+                minId = Math.min(minId, transaction.getTransactionId());
+                maxId = Math.max(maxId, transaction.getTransactionId());
+            }
+            return new Segment(month, transactions.size(), total, minId, maxId);
+        }
+    }
+}
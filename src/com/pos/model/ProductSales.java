@@ -0,0 +1,74 @@
+package com.pos.model;
+
+import java.util.Comparator;
+
+/**
+ * Units sold and revenue of one product over a period
+ */
+public class ProductSales {
+
+    /** Most units first, then most revenue */
+    public static final Comparator<ProductSales> BY_UNITS = Comparator
+            .comparingLong(ProductSales::getUnitsSold)
+            .thenComparingLong(ProductSales::getRevenue)
+            .reversed()
+            .thenComparingInt(ProductSales::getProductId);
+
+    /** Most revenue first, then most units */
+    public static final Comparator<ProductSales> BY_REVENUE = Comparator
+            .comparingLong(ProductSales::getRevenue)
+            .thenComparingLong(ProductSales::getUnitsSold)
+            .reversed()
+            .thenComparingInt(ProductSales::getProductId);
+
+    private final int productId;
+    private String productName;
+    private String category;
+    private long unitsSold;
+    private long revenue; // in cents
+
+    public ProductSales(int productId) {
+        this.productId = productId;
+    }
+
+    /**
+     * Add one sold line of this product. Lines are expected oldest first, so the name
+     * and category shown are the ones of the most recent sale.
+     */
+    public void record(Transaction.TransactionItem item) {
+        unitsSold += item.getQuantity();
+        revenue += item.getTotalPrice();
+        if (item.getProductName() != null) {
+            productName = item.getProductName();
+        }
+        if (item.getCategory() != null) {
+            category = item.getCategory();
+        }
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public long getUnitsSold() {
+        return unitsSold;
+    }
+
+    public long getRevenue() {
+        return revenue;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ProductSales{id=%d, name='%s', units=%d, revenue=$%.2f}",
+                productId, productName, unitsSold, revenue / 100.0);
+    }
+}
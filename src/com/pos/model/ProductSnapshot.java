@@ -0,0 +1,92 @@
+package com.pos.model;
+
+import java.io.Serializable;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable record of the product details a sale line needs (name, unit price, category)
+ * as they were at the time of sale.
+ * Snapshots are interned, so every line item selling the same product at the same price
+ * shares one instance and memory scales with the catalog rather than the sales history.
+ */
+public final class ProductSnapshot implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final ConcurrentHashMap<ProductSnapshot, ProductSnapshot> INTERNED = new ConcurrentHashMap<>();
+
+    private final int productId;
+    private final String name;
+    private final int unitPrice; // in cents
+    private final String category;
+
+    private ProductSnapshot(int productId, String name, int unitPrice, String category) {
+        this.productId = productId;
+        this.name = name;
+        this.unitPrice = unitPrice;
+        this.category = category;
+    }
+
+    /**
+     * Get the shared snapshot for the given product details
+     */
+    public static ProductSnapshot of(int productId, String name, int unitPrice, String category) {
+        ProductSnapshot snapshot = new ProductSnapshot(productId, name, unitPrice, category);
+        ProductSnapshot existing = INTERNED.putIfAbsent(snapshot, snapshot);
+        return existing != null ? existing : snapshot;
+    }
+
+    /**
+     * Get the shared snapshot of a product's current details
+     */
+    public static ProductSnapshot of(Product product) {
+        return of(product.getId(), product.getName(), product.getPrice(), product.getCategory());
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getUnitPrice() {
+        return unitPrice;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    // Deserialized snapshots join the shared pool as well
+    private Object readResolve() {
+        return of(productId, name, unitPrice, category);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        ProductSnapshot that = (ProductSnapshot) obj;
+        return productId == that.productId &&
+               unitPrice == that.unitPrice &&
+               Objects.equals(name, that.name) &&
+               Objects.equals(category, that.category);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(productId, name, unitPrice, category);
+    }
+
+    @Override
+    public String toString() {
+        return "ProductSnapshot{" +
+                "productId=" + productId +
+                ", name='" + name + '\'' +
+                ", unitPrice=" + unitPrice +
+                ", category='" + category + '\'' +
+                '}';
+    }
+}
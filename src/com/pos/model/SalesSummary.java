@@ -0,0 +1,105 @@
+package com.pos.model;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aggregated sales figures (transaction count, subtotal, tax and total in cents,
+ * and totals per payment method) for a day or any other period
+ */
+public class SalesSummary {
+
+    private int transactionCount;
+    private long subtotal; // in cents
+    private long tax; // in cents
+    private long total; // in cents
+    private final Map<String, Long> totalsByPaymentMethod = new TreeMap<>();
+
+    public SalesSummary() {
+    }
+
+    /**
+     * Add one completed transaction to the figures
+     */
+    public void record(Transaction transaction) {
+        record(transaction.getSubtotal(), transaction.getTax(), transaction.getTotal(), transaction.getPaymentMethod());
+    }
+
+    /**
+     * Add one completed transaction given by its amounts in cents and payment method
+     */
+    public void record(long subtotal, long tax, long total, String paymentMethod) {
+        transactionCount++;
+        this.subtotal += subtotal;
+        this.tax += tax;
+        this.total += total;
+        totalsByPaymentMethod.merge(paymentMethodOf(paymentMethod), total, Long::sum);
+    }
+
+    /**
+     * Add the figures of another summary to this one
+     */
+    public void add(SalesSummary other) {
+        transactionCount += other.transactionCount;
+        subtotal += other.subtotal;
+        tax += other.tax;
+        total += other.total;
+        for (Map.Entry<String, Long> entry : other.totalsByPaymentMethod.entrySet()) {
+            totalsByPaymentMethod.merge(entry.getKey(), entry.getValue(), Long::sum);
+        }
+    }
+
+    /**
+     * Restore stored figures (used when loading persisted rollups)
+     */
+    public void restore(int transactionCount, long subtotal, long tax, long total) {
+        this.transactionCount = transactionCount;
+        this.subtotal = subtotal;
+        this.tax = tax;
+        this.total = total;
+    }
+
+    public void setPaymentMethodTotal(String paymentMethod, long total) {
+        totalsByPaymentMethod.put(paymentMethod, total);
+    }
+
+    public int getTransactionCount() {
+        return transactionCount;
+    }
+
+    public long getSubtotal() {
+        return subtotal;
+    }
+
+    public long getTax() {
+        return tax;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public Map<String, Long> getTotalsByPaymentMethod() {
+        return Collections.unmodifiableMap(totalsByPaymentMethod);
+    }
+
+    // Average sale in cents
+    public double getAverageSale() {
+        return transactionCount > 0 ? (double) total / transactionCount : 0.0;
+    }
+
+    public boolean isEmpty() {
+        return transactionCount == 0;
+    }
+
+    // Transactions without a payment method are shown as Cash throughout the UI
+    private static String paymentMethodOf(String method) {
+        return method != null && !method.isEmpty() ? method : "Cash";
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SalesSummary{count=%d, total=$%.2f}", transactionCount, total / 100.0);
+    }
+}
@@ -1,13 +1,22 @@
 package com.pos.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 /**
- * Transaction entity class representing sales transactions in the POS system
+ * Transaction entity class representing sales transactions in the POS system.
+ *
+ * Lines are kept in the order they were added and found by product through an index, and
+ * the totals are adjusted by the change of each edit, so adding to a large basket costs the
+ * same as adding to a small one. The items list is handed out as a read-only view.
  */
 public class Transaction implements Serializable {
     private static final long serialVersionUID = 1L;
@@ -16,6 +25,8 @@ public class Transaction implements Serializable {
     private LocalDateTime timestamp;
 
     private List<TransactionItem> items;
+    private transient Map<Integer, Integer> lineIndex; // product ID -> position in items, built on first edit
+    private transient int itemCount; // total quantity, kept while lineIndex is
     private int subtotal; // in cents
     private int tax; // in cents
     private double taxRate;
@@ -45,10 +56,10 @@ public class Transaction implements Serializable {
     public static class TransactionItem implements Serializable {
         private static final long serialVersionUID = 1L;
         
-        private Product product;
+        private int productId;
+        private ProductSnapshot snapshot; // shared name/price/category as sold
 
         private int quantity;
-        private int unitPrice; // in cents
         private int totalPrice; // in cents
         
         public TransactionItem() {}
@@ -56,57 +67,83 @@ public class Transaction implements Serializable {
 
 
         public TransactionItem(Product product, int quantity) {
-            this.product = product;
+            this(ProductSnapshot.of(product), quantity);
+        }
+
+        public TransactionItem(ProductSnapshot snapshot, int quantity) {
+            this.productId = snapshot.getProductId();
+            this.snapshot = snapshot;
             this.quantity = quantity;
-            this.unitPrice = product.getPrice(); // Now returns int (cents)
-            this.totalPrice = unitPrice * quantity;
+            this.totalPrice = snapshot.getUnitPrice() * quantity;
         }
         
         // Getters and Setters
-        public Product getProduct() {
-            return product;
+        public int getProductId() {
+            return productId;
+        }
+
+        public ProductSnapshot getSnapshot() {
+            return snapshot;
         }
         
-        public void setProduct(Product product) {
-            this.product = product;
+
+        public String getProductName() {
+            return snapshot != null ? snapshot.getName() : null;
+        }
+
+        public String getCategory() {
+            return snapshot != null ? snapshot.getCategory() : null;
         }
         
         public int getQuantity() {
             return quantity;
         }
         
-        public void setQuantity(int quantity) {
+        // Quantities are changed through the Transaction, which keeps its totals in step
+        private void setQuantity(int quantity) {
             this.quantity = quantity;
-            if (product != null) {
-                this.totalPrice = unitPrice * quantity;
+            if (snapshot != null) {
+                this.totalPrice = snapshot.getUnitPrice() * quantity;
             }
         }
         
 
         public int getUnitPrice() {
-            return unitPrice;
-        }
-        
-        public void setUnitPrice(int unitPrice) {
-            this.unitPrice = unitPrice;
-            if (product != null) {
-                this.totalPrice = unitPrice * quantity;
-            }
+            return snapshot != null ? snapshot.getUnitPrice() : 0;
         }
         
         public int getTotalPrice() {
             return totalPrice;
         }
         
+        // For lines being read back before they are given to a Transaction (see setItems)
         public void setTotalPrice(int totalPrice) {
             this.totalPrice = totalPrice;
         }
+
+        // Items written by older versions embedded a full Product copy; convert it to a snapshot
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            ObjectInputStream.GetField fields = in.readFields();
+            quantity = fields.get("quantity", 0);
+            totalPrice = fields.get("totalPrice", 0);
+            snapshot = (ProductSnapshot) fields.get("snapshot", null);
+            if (snapshot != null) {
+                productId = fields.get("productId", snapshot.getProductId());
+            } else {
+                Product product = (Product) fields.get("product", null);
+                if (product != null) {
+                    productId = product.getId();
+                    snapshot = ProductSnapshot.of(productId, product.getName(),
+                            fields.get("unitPrice", product.getPrice()), product.getCategory());
+                }
+            }
+        }
         
 
         @Override
         public String toString() {
             return String.format("%s x%d - $%.2f", 
-                product != null ? product.getName() : "Unknown", 
+                snapshot != null ? snapshot.getName() : "Unknown", 
                 quantity, totalPrice / 100.0);
         }
     }
@@ -128,14 +165,34 @@ public class Transaction implements Serializable {
         this.timestamp = timestamp;
     }
     
+    /**
+     * Read-only view of the lines in the order they were added; it follows later changes
+     */
     public List<TransactionItem> getItems() {
-        return new ArrayList<>(items);
+        return Collections.unmodifiableList(items);
     }
-    
+
     public void setItems(List<TransactionItem> items) {
-        this.items = items != null ? items : new ArrayList<>();
+        this.items = items != null ? new ArrayList<>(items) : new ArrayList<>();
+        this.lineIndex = null;
         recalculateTotals();
     }
+
+    /**
+     * The line of the given product, or null if it is not in the transaction
+     */
+    public TransactionItem getItem(int productId) {
+        Integer position = lineIndex().get(productId);
+        return position != null ? items.get(position) : null;
+    }
+
+    /**
+     * Position of the product's line in getItems(), or -1 if it is not in the transaction
+     */
+    public int indexOfItem(int productId) {
+        Integer position = lineIndex().get(productId);
+        return position != null ? position : -1;
+    }
     
 
     public int getSubtotal() {
@@ -220,39 +277,48 @@ public class Transaction implements Serializable {
         if (product == null || quantity <= 0) return;
         
         // Check if product already exists in transaction
-        for (TransactionItem item : items) {
-            if (item.getProduct().getId() == product.getId()) {
-                item.setQuantity(item.getQuantity() + quantity);
-                recalculateTotals();
-                return;
-            }
+        TransactionItem existing = getItem(product.getId());
+        if (existing != null) {
+            changeQuantity(existing, existing.getQuantity() + quantity);
+            return;
         }
         
         // Add new item
-        items.add(new TransactionItem(product, quantity));
-        recalculateTotals();
+        TransactionItem item = new TransactionItem(product, quantity);
+        lineIndex.put(product.getId(), items.size());
+        items.add(item);
+        itemCount += quantity;
+        adjustSubtotal(item.getTotalPrice());
     }
     
     public void removeItem(int productId) {
-        items.removeIf(item -> item.getProduct().getId() == productId);
-        recalculateTotals();
+        Integer position = lineIndex().remove(productId);
+        if (position == null) return;
+
+        TransactionItem item = items.remove((int) position);
+        // The lines after it have moved up one
+        for (int i = position; i < items.size(); i++) {
+            lineIndex.replace(items.get(i).getProductId(), i + 1, i);
+        }
+        itemCount -= item.getQuantity();
+        adjustSubtotal(-item.getTotalPrice());
     }
     
     public void updateItemQuantity(int productId, int newQuantity) {
-        for (TransactionItem item : items) {
-            if (item.getProduct().getId() == productId) {
-                if (newQuantity <= 0) {
-                    removeItem(productId);
-                } else {
-                    item.setQuantity(newQuantity);
-                }
-                recalculateTotals();
-                break;
-            }
+        TransactionItem item = getItem(productId);
+        if (item == null) return;
+
+        if (newQuantity <= 0) {
+            removeItem(productId);
+        } else {
+            changeQuantity(item, newQuantity);
         }
     }
     
     public int getItemCount() {
+        if (lineIndex != null) {
+            return itemCount;
+        }
         return items.stream().mapToInt(TransactionItem::getQuantity).sum();
     }
     
@@ -262,10 +328,41 @@ public class Transaction implements Serializable {
 
     public void clear() {
         items.clear();
+        lineIndex = null;
         recalculateTotals();
     }
     
 
+    private void changeQuantity(TransactionItem item, int quantity) {
+        int previousPrice = item.getTotalPrice();
+        itemCount += quantity - item.getQuantity();
+        item.setQuantity(quantity);
+        adjustSubtotal(item.getTotalPrice() - previousPrice);
+    }
+
+    // Tax is worked out on the whole subtotal, as recalculateTotals does, so both round alike
+    private void adjustSubtotal(int change) {
+        subtotal += change;
+        tax = (int) Math.round(subtotal * taxRate);
+        total = subtotal + tax;
+    }
+
+    // Index of the lines by product (the first line wins if a stored transaction repeats one);
+    // built on first use, so transactions that are only read never pay for it
+    private Map<Integer, Integer> lineIndex() {
+        if (lineIndex == null) {
+            Map<Integer, Integer> index = new HashMap<>();
+            int count = 0;
+            for (int i = 0; i < items.size(); i++) {
+                index.putIfAbsent(items.get(i).getProductId(), i);
+                count += items.get(i).getQuantity();
+            }
+            itemCount = count;
+            lineIndex = index;
+        }
+        return lineIndex;
+    }
+
     private void recalculateTotals() {
         subtotal = items.stream()
                 .mapToInt(TransactionItem::getTotalPrice)
@@ -1,7 +1,6 @@
 package com.pos.printer;
 
 import com.pos.model.Transaction;
-import com.pos.model.Product;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.print.*;
@@ -137,8 +136,7 @@ public class ReceiptPrinter {
         
         // Items
         for (Transaction.TransactionItem item : transaction.getItems()) {
-            Product product = item.getProduct();
-            String itemName = truncateString(product.getName(), 20);
+            String itemName = truncateString(item.getProductName(), 20);
             String quantity = String.valueOf(item.getQuantity());
 
             String price = String.format("$%.2f", item.getTotalPrice() / 100.0);
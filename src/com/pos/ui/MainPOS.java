@@ -1,9 +1,11 @@
 package com.pos.ui;
 
 import com.pos.manager.DataManager;
+import com.pos.manager.ExportOptions;
 import com.pos.model.Product;
 import com.pos.model.Transaction;
 import com.pos.printer.ReceiptPrinter;
+import com.pos.ui.util.BackgroundTask;
 
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
@@ -59,12 +61,11 @@ public class MainPOS extends JFrame {
         // Initialize data manager with production-ready features
         dataManager = new DataManager();
         
-        // Setup data integrity check and shutdown hook
-        dataManager.checkDataIntegrity();
+        // Setup shutdown hook (the integrity check runs once the sales history has loaded)
         dataManager.setupShutdownHook();
         
-        // Initialize current transaction
-        currentTransaction = new Transaction(dataManager.getNextTransactionId());
+        // Initialize current transaction (its ID is assigned when the sale is recorded)
+        currentTransaction = new Transaction();
         
         // Initialize UI components
         initializeMenuBar();
@@ -87,7 +88,19 @@ public class MainPOS extends JFrame {
         // Show sales panel by default
         showPanel("Sales");
         
-        updateStatus("Ready");
+        if (dataManager.isHistoryLoaded()) {
+            updateStatus("Ready");
+        } else {
+            updateStatus("Ready - loading sales history...");
+        }
+        dataManager.whenHistoryLoaded(() -> {
+            dataManager.checkDataIntegrity();
+            SwingUtilities.invokeLater(() -> {
+                if (statusLabel.getText().startsWith("Ready")) {
+                    updateStatus("Ready");
+                }
+            });
+        });
     }
     
     private void initializeMenuBar() {
@@ -299,7 +312,7 @@ public class MainPOS extends JFrame {
     
     // Transaction management methods
     public void newTransaction() {
-        currentTransaction = new Transaction(dataManager.getNextTransactionId());
+        currentTransaction = new Transaction();
         salesPanel.setCurrentTransaction(currentTransaction);
         salesPanel.clearCart();
         salesPanel.refreshProductList();
@@ -329,7 +342,7 @@ public class MainPOS extends JFrame {
         if (dialog.isPaymentCompleted()) {
             // Transaction completed successfully
             dataManager.addTransaction(currentTransaction);
-            dataManager.saveData();
+            dataManager.requestSave();
             
 
             // Show receipt
@@ -340,24 +353,118 @@ public class MainPOS extends JFrame {
                 currentTransaction.getAmountPaid()
             );
             
-            // Refresh the sales panel to update stock
-            refreshSalesPanel();
+            // The sale is part of the history now and must not change; the next one starts a new cart
+            currentTransaction = new Transaction();
+            salesPanel.setCurrentTransaction(currentTransaction);
+
+            // Refresh the sales panel to update stock and empty the cart
+            salesPanel.refreshData();
         }
     }
     
     // Data management methods
     private void exportData() {
+        ExportOptions options = showExportOptionsDialog();
+        if (options == null) {
+            return;
+        }
+
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setDialogTitle("Export POS Data");
-        fileChooser.setSelectedFile(new java.io.File("pos_data_export.txt"));
+        fileChooser.setSelectedFile(new java.io.File(options.getDefaultFileName()));
         
         if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
-            dataManager.exportData(fileChooser.getSelectedFile().getAbsolutePath());
-            JOptionPane.showMessageDialog(this, "Data exported successfully!", 
-                                        "Export Complete", JOptionPane.INFORMATION_MESSAGE);
+            String filePath = fileChooser.getSelectedFile().getAbsolutePath();
+
+            // Export in the background; the progress dialog's Cancel stops it
+            ProgressMonitor monitor = new ProgressMonitor(this, "Exporting POS data...", null, 0, 100);
+            BackgroundTask<Boolean, Void> exportTask = new BackgroundTask<>(task -> dataManager.exportData(filePath, options, task));
+            exportTask.addPropertyChangeListener(e -> {
+                if ("progress".equals(e.getPropertyName())) {
+                    monitor.setProgress((Integer) e.getNewValue());
+                    if (monitor.isCanceled()) {
+                        exportTask.cancel(true);
+                    }
+                }
+            });
+            exportTask
+                .onSuccess(exported -> {
+                    monitor.close();
+                    if (exported) {
+                        JOptionPane.showMessageDialog(this, "Data exported successfully!",
+                                                    "Export Complete", JOptionPane.INFORMATION_MESSAGE);
+                    } else {
+                        JOptionPane.showMessageDialog(this, "Data export failed.",
+                                                    "Export Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                })
+                .onCancel(() -> {
+                    monitor.close();
+                    JOptionPane.showMessageDialog(this, "Data export cancelled.",
+                                                "Export Cancelled", JOptionPane.INFORMATION_MESSAGE);
+                })
+                .onFailure(e -> {
+                    monitor.close();
+                    JOptionPane.showMessageDialog(this, "Error exporting data: " + e.getMessage(),
+                                                "Export Error", JOptionPane.ERROR_MESSAGE);
+                })
+                .start();
         }
     }
     
+    /**
+     * Ask what to export; returns null if the user cancelled
+     */
+    private ExportOptions showExportOptionsDialog() {
+        JComboBox<String> datasetComboBox = new JComboBox<>(new String[] {"Transactions", "Line Items", "Products"});
+        JComboBox<String> formatComboBox = new JComboBox<>(new String[] {"CSV", "JSON Lines"});
+        JComboBox<String> rangeComboBox = new JComboBox<>(new String[] {"All Time", "Today", "Last 7 Days", "Last 30 Days", "This Month"});
+        JCheckBox gzipCheckBox = new JCheckBox("Compress (gzip)");
+
+        JPanel panel = new JPanel(new GridLayout(0, 2, 5, 5));
+        panel.add(new JLabel("Data:"));
+        panel.add(datasetComboBox);
+        panel.add(new JLabel("Format:"));
+        panel.add(formatComboBox);
+        panel.add(new JLabel("Date Range:"));
+        panel.add(rangeComboBox);
+        panel.add(new JLabel());
+        panel.add(gzipCheckBox);
+
+        int choice = JOptionPane.showConfirmDialog(this, panel, "Export POS Data",
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (choice != JOptionPane.OK_OPTION) {
+            return null;
+        }
+
+        ExportOptions.Dataset[] datasets = {
+            ExportOptions.Dataset.TRANSACTIONS, ExportOptions.Dataset.LINE_ITEMS, ExportOptions.Dataset.PRODUCTS
+        };
+        ExportOptions options = new ExportOptions(datasets[datasetComboBox.getSelectedIndex()],
+                formatComboBox.getSelectedIndex() == 0 ? ExportOptions.Format.CSV : ExportOptions.Format.JSON_LINES);
+        options.setGzip(gzipCheckBox.isSelected());
+
+        LocalDateTime now = LocalDateTime.now();
+        switch ((String) rangeComboBox.getSelectedItem()) {
+            case "Today":
+                options.setDateRange(now.toLocalDate().atStartOfDay(), now);
+                break;
+            case "Last 7 Days":
+                options.setDateRange(now.minusDays(7), now);
+                break;
+            case "Last 30 Days":
+                options.setDateRange(now.minusDays(30), now);
+                break;
+            case "This Month":
+                options.setDateRange(now.withDayOfMonth(1).toLocalDate().atStartOfDay(), now);
+                break;
+            case "All Time":
+            default:
+                break;
+        }
+        return options;
+    }
+
     private void clearAllData() {
         int result = JOptionPane.showConfirmDialog(this,
             "Are you sure you want to clear all data? This action cannot be undone.",
@@ -365,18 +472,31 @@ public class MainPOS extends JFrame {
             JOptionPane.WARNING_MESSAGE);
         
         if (result == JOptionPane.YES_OPTION) {
-            dataManager.clearAllData();
-            
-            // Refresh all panels
-            salesPanel.refreshData();
-            productPanel.refreshData();
-            transactionPanel.refreshData();
-            reportsPanel.refreshData();
-            
-            newTransaction();
-            
-            JOptionPane.showMessageDialog(this, "All data has been cleared.", 
-                                        "Data Cleared", JOptionPane.INFORMATION_MESSAGE);
+            // Clearing backs up first, which waits for the sales history to load
+            updateStatus("Clearing data...");
+            new BackgroundTask<Void, Void>(task -> {
+                dataManager.clearAllData();
+                return null;
+            })
+                .onSuccess(cleared -> {
+                    // Refresh all panels
+                    salesPanel.refreshData();
+                    productPanel.refreshData();
+                    transactionPanel.refreshData();
+                    reportsPanel.refreshData();
+
+                    newTransaction();
+
+                    updateStatus("Data cleared");
+                    JOptionPane.showMessageDialog(this, "All data has been cleared.",
+                                                "Data Cleared", JOptionPane.INFORMATION_MESSAGE);
+                })
+                .onFailure(e -> {
+                    updateStatus("Ready");
+                    JOptionPane.showMessageDialog(this, "Failed to clear data: " + e.getMessage(),
+                                                "Clear Data Error", JOptionPane.ERROR_MESSAGE);
+                })
+                .start();
         }
     }
     
@@ -588,16 +708,24 @@ public class MainPOS extends JFrame {
     }
     
     // Data management methods for production use
+    // These wait for the sales history to load, so they run in the background
     private void createBackup() {
-        try {
+        updateStatus("Creating backup...");
+        new BackgroundTask<Void, Void>(task -> {
             dataManager.createBackup();
-            JOptionPane.showMessageDialog(this, "Data backup created successfully!", 
-                                        "Backup Complete", JOptionPane.INFORMATION_MESSAGE);
-            updateStatus("Data backup created");
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(this, "Failed to create backup: " + e.getMessage(), 
-                                        "Backup Error", JOptionPane.ERROR_MESSAGE);
-        }
+            return null;
+        })
+            .onSuccess(created -> {
+                JOptionPane.showMessageDialog(this, "Data backup created successfully!",
+                                            "Backup Complete", JOptionPane.INFORMATION_MESSAGE);
+                updateStatus("Data backup created");
+            })
+            .onFailure(e -> {
+                updateStatus("Ready");
+                JOptionPane.showMessageDialog(this, "Failed to create backup: " + e.getMessage(),
+                                            "Backup Error", JOptionPane.ERROR_MESSAGE);
+            })
+            .start();
     }
     
     private void restoreFromBackup() {
@@ -623,38 +751,51 @@ public class MainPOS extends JFrame {
             
             if (result == JOptionPane.YES_OPTION) {
                 String backupPath = selectedBackup.split(" \\(")[0];
-                boolean success = dataManager.restoreFromBackup(backupPath);
-                
-                if (success) {
-                    // Refresh all panels
-                    salesPanel.refreshData();
-                    productPanel.refreshData();
-                    transactionPanel.refreshData();
-                    reportsPanel.refreshData();
-                    
-                    JOptionPane.showMessageDialog(this, "Data restored successfully!", 
-                                                "Restore Complete", JOptionPane.INFORMATION_MESSAGE);
-                    updateStatus("Data restored from backup");
-                } else {
-                    JOptionPane.showMessageDialog(this, "Failed to restore from backup.", 
-                                                "Restore Error", JOptionPane.ERROR_MESSAGE);
-                }
+                updateStatus("Restoring from backup...");
+                new BackgroundTask<Boolean, Void>(task -> dataManager.restoreFromBackup(backupPath))
+                    .onSuccess(success -> {
+                        if (success) {
+                            // Refresh all panels
+                            salesPanel.refreshData();
+                            productPanel.refreshData();
+                            transactionPanel.refreshData();
+                            reportsPanel.refreshData();
+
+                            JOptionPane.showMessageDialog(this, "Data restored successfully!",
+                                                        "Restore Complete", JOptionPane.INFORMATION_MESSAGE);
+                            updateStatus("Data restored from backup");
+                        } else {
+                            updateStatus("Ready");
+                            JOptionPane.showMessageDialog(this, "Failed to restore from backup.",
+                                                        "Restore Error", JOptionPane.ERROR_MESSAGE);
+                        }
+                    })
+                    .onFailure(e -> {
+                        updateStatus("Ready");
+                        JOptionPane.showMessageDialog(this, "Failed to restore from backup: " + e.getMessage(),
+                                                    "Restore Error", JOptionPane.ERROR_MESSAGE);
+                    })
+                    .start();
             }
         }
     }
     
     private void showDataStatistics() {
-        String stats = dataManager.getDataStatistics();
-        
-        JTextArea textArea = new JTextArea(stats);
-        textArea.setEditable(false);
-        textArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
-        
-        JScrollPane scrollPane = new JScrollPane(textArea);
-        scrollPane.setPreferredSize(new Dimension(400, 300));
-        
-        JOptionPane.showMessageDialog(this, scrollPane, "Data Statistics", 
-                                    JOptionPane.INFORMATION_MESSAGE);
+        new BackgroundTask<String, Void>(task -> dataManager.getDataStatistics())
+            .onSuccess(stats -> {
+                JTextArea textArea = new JTextArea(stats);
+                textArea.setEditable(false);
+                textArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+
+                JScrollPane scrollPane = new JScrollPane(textArea);
+                scrollPane.setPreferredSize(new Dimension(400, 300));
+
+                JOptionPane.showMessageDialog(this, scrollPane, "Data Statistics",
+                                            JOptionPane.INFORMATION_MESSAGE);
+            })
+            .onFailure(e -> JOptionPane.showMessageDialog(this, "Failed to read data statistics: " + e.getMessage(),
+                                                        "Statistics Error", JOptionPane.ERROR_MESSAGE))
+            .start();
     }
     
     private void forceSaveData() {
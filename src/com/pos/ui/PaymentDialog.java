@@ -233,10 +233,10 @@ public class PaymentDialog extends JDialog {
     private void completePayment() {
         // Validate stock before processing payment
         for (Transaction.TransactionItem item : transaction.getItems()) {
-            Product product = dataManager.getProductById(item.getProduct().getId());
+            Product product = dataManager.getProductById(item.getProductId());
             if (product == null || product.getQuantity() < item.getQuantity()) {
                 JOptionPane.showMessageDialog(this,
-                    "The product '" + item.getProduct().getName() + "' is out of stock or has insufficient quantity.",
+                    "The product '" + item.getProductName() + "' is out of stock or has insufficient quantity.",
                     "Stock Error", JOptionPane.ERROR_MESSAGE);
                 return;
             }
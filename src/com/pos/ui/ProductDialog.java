@@ -350,16 +350,11 @@ class ProductDialog extends JDialog {
 
             Product product;
             if (existingProduct != null) {
-                // Update existing product
-                existingProduct.setName(name);
-                existingProduct.setDescription(description);
-                existingProduct.setPrice(price);
-                existingProduct.setCategory(category);
-                existingProduct.setQuantity(quantity);
-                existingProduct.setMinStockLevel(minStock);
-                existingProduct.setBarcode(barcode.isEmpty() ? null : barcode);
-                existingProduct.setActive(active);
-                product = existingProduct;
+                // Update existing product: the catalog's instance is shared with the till and
+                // the background save, so the edited product replaces it instead of changing it
+                product = new Product(existingProduct.getId(), name, description, price, category,
+                                      quantity, minStock, barcode.isEmpty() ? null : barcode);
+                product.setActive(active);
 
                 dataManager.updateProduct(product);
             } else {
@@ -381,7 +376,7 @@ class ProductDialog extends JDialog {
                 dataManager.addProduct(product);
             }
 
-            dataManager.saveData();
+            dataManager.requestSave();
             productSaved = true;
 
             JOptionPane.showMessageDialog(this, "Product saved successfully!",
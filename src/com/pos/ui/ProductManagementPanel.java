@@ -218,15 +218,9 @@ public class ProductManagementPanel extends JPanel {
         String searchTerm = searchField.getText().trim();
         String selectedCategory = (String) categoryFilterComboBox.getSelectedItem();
 
-        List<Product> products;
-        if (selectedCategory != null && !selectedCategory.equals("All Categories")) {
-            products = dataManager.searchProducts(searchTerm);
-            products = products.stream()
-                    .filter(p -> selectedCategory.equals(p.getCategory()))
-                    .toList();
-        } else {
-            products = dataManager.searchProducts(searchTerm);
-        }
+        // The category is filtered inside the search
+        String category = "All Categories".equals(selectedCategory) ? null : selectedCategory;
+        List<Product> products = dataManager.searchProducts(searchTerm, category);
 
         updateProductTable(products);
         statusLabel.setText("Found " + products.size() + " products");
@@ -316,7 +310,7 @@ public class ProductManagementPanel extends JPanel {
             boolean deleted = dataManager.deleteProduct(productId);
             if (deleted) {
                 refreshProductTable();
-                dataManager.saveData();
+                dataManager.requestSave();
                 mainPOS.updateStatus("Product deleted successfully");
             } else {
                 JOptionPane.showMessageDialog(this, "Failed to delete product.",
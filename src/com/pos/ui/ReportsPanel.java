@@ -1,21 +1,32 @@
 package com.pos.ui;
 
 import com.pos.manager.DataManager;
+import com.pos.model.ProductSales;
+import com.pos.model.SalesSummary;
 import com.pos.printer.ReceiptPrinter;
+import com.pos.ui.util.BackgroundTask;
 
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
 
 /**
  * Reports Panel - Interface for generating and viewing sales reports
  */
 public class ReportsPanel extends JPanel {
+    private static final int TOP_PRODUCTS_LIMIT = 10;
+
     private DataManager dataManager;
     private MainPOS mainPOS;
 
@@ -36,6 +47,11 @@ public class ReportsPanel extends JPanel {
     private JButton printReportButton;
     private JButton exportReportButton;
 
+    // Background report generation
+    private JProgressBar reportProgressBar;
+    private JButton cancelReportButton;
+    private BackgroundTask<String, String> reportTask;
+
     public ReportsPanel(DataManager dataManager, MainPOS mainPOS) {
         this.dataManager = dataManager;
         this.mainPOS = mainPOS;
@@ -52,6 +68,7 @@ public class ReportsPanel extends JPanel {
         reportTypeComboBox = new JComboBox<>();
         reportTypeComboBox.addItem("Sales Summary");
         reportTypeComboBox.addItem("Daily Sales");
+        reportTypeComboBox.addItem("Monthly Sales");
         reportTypeComboBox.addItem("Sales by Category");
         reportTypeComboBox.addItem("Top Products");
         reportTypeComboBox.addItem("Low Stock Alert");
@@ -88,6 +105,12 @@ public class ReportsPanel extends JPanel {
 
         exportReportButton = new JButton("Export Report");
         exportReportButton.setMnemonic('E');
+
+        reportProgressBar = new JProgressBar(0, 100);
+        reportProgressBar.setVisible(false);
+
+        cancelReportButton = new JButton("Cancel");
+        cancelReportButton.setEnabled(false);
     }
 
 
@@ -165,6 +188,8 @@ public class ReportsPanel extends JPanel {
         JPanel actionPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         actionPanel.add(printReportButton);
         actionPanel.add(exportReportButton);
+        actionPanel.add(reportProgressBar);
+        actionPanel.add(cancelReportButton);
 
         // Add all panels to main panel
         add(topPanel, BorderLayout.NORTH);
@@ -244,35 +269,77 @@ public class ReportsPanel extends JPanel {
                 break;
         }
 
-        // Generate the appropriate report
+        runReport(reportType, startDate, endDate);
+    }
+
+    /**
+     * Generate a report on a background thread so the till stays responsive,
+     * replacing any report still being generated
+     */
+    private void runReport(String reportType, LocalDateTime startDate, LocalDateTime endDate) {
+        if (reportTask != null) {
+            reportTask.cancel(true);
+        }
+
+        // The task waits for the sales history if it is still loading after startup
+        if (dataManager.isHistoryLoaded()) {
+            reportTextArea.setText("Generating " + reportType + " report...");
+        } else {
+            reportTextArea.setText("Loading sales history...");
+        }
+        reportTask = new BackgroundTask<String, String>(task -> buildReport(task, reportType, startDate, endDate))
+            .onChunks(parts -> reportTextArea.setText(parts.get(parts.size() - 1))) // The report so far
+            .onSuccess(reportContent -> {
+                reportTextArea.setText(reportContent);
+                reportTextArea.setCaretPosition(0); // Scroll to top
+            })
+            .onCancel(() -> reportTextArea.setText("Report cancelled."))
+            .onFailure(e -> reportTextArea.setText("Error generating report: " + e.getMessage()))
+            .showProgressIn(reportProgressBar, cancelReportButton);
+        reportTask.start();
+    }
+
+    private String buildReport(BackgroundTask<String, String> task, String reportType,
+                               LocalDateTime startDate, LocalDateTime endDate) {
         String reportContent = "";
         switch (reportType) {
             case "Sales Summary":
-                reportContent = generateSalesSummaryReport(startDate, endDate);
+                reportContent = generateSalesSummaryReport(task, startDate, endDate);
                 break;
             case "Daily Sales":
-                reportContent = generateDailySalesReport(startDate, endDate);
+                reportContent = generateDailySalesReport(task, startDate, endDate);
+                break;
+            case "Monthly Sales":
+                reportContent = generateMonthlySalesReport(task, startDate, endDate);
                 break;
             case "Sales by Category":
-                reportContent = generateSalesByCategoryReport(startDate, endDate);
+                reportContent = generateSalesByCategoryReport(task, startDate, endDate);
                 break;
             case "Top Products":
-                reportContent = generateTopProductsReport(startDate, endDate);
+                reportContent = generateTopProductsReport(task, startDate, endDate);
                 break;
             case "Low Stock Alert":
                 reportContent = generateLowStockReport();
                 break;
         }
-
-        reportTextArea.setText(reportContent);
-        reportTextArea.setCaretPosition(0); // Scroll to top
+        return reportContent;
     }
 
     private void generateDefaultReport() {
-        reportTextArea.setText(generateSalesSummaryReport(null, LocalDateTime.now()));
+        runReport("Sales Summary", null, LocalDateTime.now());
+    }
+
+    /**
+     * Show the report built so far while the rest is generated, and stop here if it was cancelled
+     */
+    private static void endSection(BackgroundTask<String, String> task, StringBuilder report) {
+        if (task.isCancelled()) {
+            throw new CancellationException();
+        }
+        task.emit(report.toString());
     }
 
-    private String generateSalesSummaryReport(LocalDateTime startDate, LocalDateTime endDate) {
+    private String generateSalesSummaryReport(BackgroundTask<String, String> task, LocalDateTime startDate, LocalDateTime endDate) {
         StringBuilder report = new StringBuilder();
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
@@ -288,24 +355,32 @@ public class ReportsPanel extends JPanel {
         }
         report.append(" to ").append(endDate.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")));
         report.append("\nGenerated: ").append(LocalDateTime.now().format(formatter)).append("\n\n");
+        endSection(task, report);
 
-
-        double totalSales = dataManager.getSalesForDateRange(startDate, endDate) / 100.0;
-        int transactionCount = dataManager.getTransactionsByDateRange(startDate, endDate).size();
-        double averageSale = transactionCount > 0 ? totalSales / transactionCount : 0.0;
+        SalesSummary summary = dataManager.getSalesSummary(startDate, endDate);
 
         report.append("SUMMARY STATISTICS:\n");
         report.append("-".repeat(50)).append("\n");
-        report.append(String.format("Total Transactions: %d\n", transactionCount));
-        report.append("Total Sales: ").append(String.format("$%.2f", totalSales)).append("\n");
-        report.append("Average Sale: ").append(String.format("$%.2f", averageSale)).append("\n");
-        report.append("Tax Collected: ").append(String.format("$%.2f", totalSales * 0.08)).append("\n"); // Assuming 8% tax rate
+        report.append(String.format("Total Transactions: %d\n", summary.getTransactionCount()));
+        report.append("Total Sales: ").append(String.format("$%.2f", summary.getTotal() / 100.0)).append("\n");
+        report.append("Average Sale: ").append(String.format("$%.2f", summary.getAverageSale() / 100.0)).append("\n");
+        report.append("Tax Collected: ").append(String.format("$%.2f", summary.getTax() / 100.0)).append("\n");
         report.append("\n");
+        endSection(task, report);
+
+        if (!summary.isEmpty()) {
+            report.append("SALES BY PAYMENT METHOD:\n");
+            report.append("-".repeat(50)).append("\n");
+            for (Map.Entry<String, Long> entry : summary.getTotalsByPaymentMethod().entrySet()) {
+                report.append(String.format("%-20s $%.2f\n", entry.getKey(), entry.getValue() / 100.0));
+            }
+            report.append("\n");
+        }
 
         return report.toString();
     }
 
-    private String generateDailySalesReport(LocalDateTime startDate, LocalDateTime endDate) {
+    private String generateDailySalesReport(BackgroundTask<String, String> task, LocalDateTime startDate, LocalDateTime endDate) {
         StringBuilder report = new StringBuilder();
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
@@ -321,31 +396,81 @@ public class ReportsPanel extends JPanel {
         }
         report.append(" to ").append(endDate.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")));
         report.append("\nGenerated: ").append(LocalDateTime.now().format(formatter)).append("\n\n");
+        endSection(task, report);
 
         report.append(String.format("%-12s %15s %12s\n", "Date", "Transactions", "Sales"));
         report.append("=".repeat(40)).append("\n");
 
-        LocalDateTime current = startDate != null ? startDate : LocalDateTime.now().minusDays(7);
-        LocalDateTime end = endDate != null ? endDate : LocalDateTime.now();
+        LocalDate firstDay = (startDate != null ? startDate : LocalDateTime.now().minusDays(7)).toLocalDate();
+        LocalDate lastDay = (endDate != null ? endDate : LocalDateTime.now()).toLocalDate();
+
+        // A month of rollups at a time, one per day with sales; days without sales are printed as zero
+        for (LocalDate monthStart = firstDay; !monthStart.isAfter(lastDay);
+             monthStart = monthStart.withDayOfMonth(1).plusMonths(1)) {
+            LocalDate monthEnd = monthStart.withDayOfMonth(monthStart.lengthOfMonth());
+            if (monthEnd.isAfter(lastDay)) {
+                monthEnd = lastDay;
+            }
+            SortedMap<LocalDate, SalesSummary> dailySales = dataManager.getDailySales(monthStart, monthEnd);
+
+            for (LocalDate day = monthStart; !day.isAfter(monthEnd); day = day.plusDays(1)) {
+                SalesSummary summary = dailySales.get(day);
+                int dailyTransactions = summary != null ? summary.getTransactionCount() : 0;
+                double sales = summary != null ? summary.getTotal() / 100.0 : 0.0;
 
+                report.append(String.format("%-12s %15d $%.2f\n",
+                    day.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")),
+                    dailyTransactions, sales));
+            }
+            endSection(task, report);
+        }
 
-        while (!current.isAfter(end)) {
-            double dailySales = dataManager.getSalesForDate(current) / 100.0;
-            int dailyTransactions = dataManager.getTransactionsByDateRange(
-                current.toLocalDate().atStartOfDay(),
-                current.toLocalDate().atTime(23, 59, 59)).size();
+        return report.toString();
+    }
 
-            report.append(String.format("%-12s %15d $%.2f\n",
-                current.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")),
-                dailyTransactions, dailySales));
+    private String generateMonthlySalesReport(BackgroundTask<String, String> task, LocalDateTime startDate, LocalDateTime endDate) {
+        StringBuilder report = new StringBuilder();
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
-            current = current.plusDays(1);
+        report.append("=======================================\n");
+        report.append("        MONTHLY SALES REPORT          \n");
+        report.append("=======================================\n\n");
+
+        report.append("Report Period: ");
+        if (startDate != null) {
+            report.append(startDate.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")));
+        } else {
+            report.append("All Time");
+        }
+        report.append(" to ").append(endDate.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")));
+        report.append("\nGenerated: ").append(LocalDateTime.now().format(formatter)).append("\n\n");
+        endSection(task, report);
+
+        // Fold the daily rollups into months
+        SortedMap<YearMonth, SalesSummary> monthlySales = new TreeMap<>();
+        SortedMap<LocalDate, SalesSummary> dailySales = dataManager.getDailySales(
+            startDate != null ? startDate.toLocalDate() : null, endDate.toLocalDate());
+        for (Map.Entry<LocalDate, SalesSummary> entry : dailySales.entrySet()) {
+            monthlySales.computeIfAbsent(YearMonth.from(entry.getKey()), m -> new SalesSummary()).add(entry.getValue());
+        }
+
+        report.append(String.format("%-10s %15s %12s %12s\n", "Month", "Transactions", "Tax", "Sales"));
+        report.append("=".repeat(52)).append("\n");
+
+        for (Map.Entry<YearMonth, SalesSummary> entry : monthlySales.entrySet()) {
+            SalesSummary summary = entry.getValue();
+            report.append(String.format("%-10s %15d %12s %12s\n",
+                entry.getKey().format(DateTimeFormatter.ofPattern("yyyy-MM")),
+                summary.getTransactionCount(),
+                String.format("$%.2f", summary.getTax() / 100.0),
+                String.format("$%.2f", summary.getTotal() / 100.0)));
+            endSection(task, report);
         }
 
         return report.toString();
     }
 
-    private String generateSalesByCategoryReport(LocalDateTime startDate, LocalDateTime endDate) {
+    private String generateSalesByCategoryReport(BackgroundTask<String, String> task, LocalDateTime startDate, LocalDateTime endDate) {
         StringBuilder report = new StringBuilder();
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
@@ -361,34 +486,70 @@ public class ReportsPanel extends JPanel {
         }
         report.append(" to ").append(endDate.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")));
         report.append("\nGenerated: ").append(LocalDateTime.now().format(formatter)).append("\n\n");
+        endSection(task, report);
 
-        Map<String, Double> salesByCategory = dataManager.getSalesByCategory();
+        Map<String, Long> salesByCategory = dataManager.getSalesByCategory(startDate, endDate);
 
         report.append(String.format("%-20s %12s\n", "Category", "Sales"));
         report.append("-".repeat(35)).append("\n");
 
-
-        for (Map.Entry<String, Double> entry : salesByCategory.entrySet()) {
-            report.append(String.format("%-20s $%.2f\n",
-                entry.getKey(), entry.getValue() / 100.0));
-        }
+        // Highest selling categories first
+        salesByCategory.entrySet().stream()
+            .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+            .forEach(entry -> report.append(String.format("%-20s $%.2f\n",
+                entry.getKey(), entry.getValue() / 100.0)));
 
         return report.toString();
     }
 
-    private String generateTopProductsReport(LocalDateTime startDate, LocalDateTime endDate) {
+    private String generateTopProductsReport(BackgroundTask<String, String> task, LocalDateTime startDate, LocalDateTime endDate) {
         StringBuilder report = new StringBuilder();
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
         report.append("=======================================\n");
         report.append("        TOP PRODUCTS REPORT           \n");
         report.append("=======================================\n\n");
 
-        report.append("This feature requires additional implementation.\n");
-        report.append("It would show products ranked by sales volume.\n");
+        report.append("Report Period: ");
+        if (startDate != null) {
+            report.append(startDate.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")));
+        } else {
+            report.append("All Time");
+        }
+        report.append(" to ").append(endDate.format(DateTimeFormatter.ofPattern("yyyy-MM-dd")));
+        report.append("\nGenerated: ").append(LocalDateTime.now().format(formatter)).append("\n\n");
+        endSection(task, report);
+
+        List<ProductSales> byUnits = dataManager.getTopProductsByUnits(startDate, endDate, TOP_PRODUCTS_LIMIT);
+        if (byUnits.isEmpty()) {
+            report.append("No sales in this period.\n");
+            return report.toString();
+        }
+
+        report.append("TOP ").append(TOP_PRODUCTS_LIMIT).append(" BY UNITS SOLD:\n");
+        appendProductRanking(report, byUnits);
+        report.append("\n");
+        endSection(task, report);
+
+        report.append("TOP ").append(TOP_PRODUCTS_LIMIT).append(" BY REVENUE:\n");
+        appendProductRanking(report, dataManager.getTopProductsByRevenue(startDate, endDate, TOP_PRODUCTS_LIMIT));
 
         return report.toString();
     }
 
+    private void appendProductRanking(StringBuilder report, List<ProductSales> ranking) {
+        report.append(String.format("%-5s %-25s %10s %12s\n", "Rank", "Product", "Units", "Revenue"));
+        report.append("-".repeat(55)).append("\n");
+
+        int rank = 1;
+        for (ProductSales sales : ranking) {
+            String name = sales.getProductName() != null ? sales.getProductName() : "Product #" + sales.getProductId();
+            report.append(String.format("%-5d %-25s %10d %12s\n",
+                rank++, name, sales.getUnitsSold(),
+                String.format("$%.2f", sales.getRevenue() / 100.0)));
+        }
+    }
+
     private String generateLowStockReport() {
         StringBuilder report = new StringBuilder();
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
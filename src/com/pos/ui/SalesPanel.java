@@ -3,19 +3,29 @@ package com.pos.ui;
 import com.pos.manager.DataManager;
 import com.pos.model.Product;
 import com.pos.model.Transaction;
+import com.pos.ui.util.BackgroundTask;
+import com.pos.ui.util.KeyboardWedgeDetector;
+import com.pos.ui.util.TableRowDiff;
 
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Vector;
 
 /**
  * Sales Panel - Main interface for processing sales transactions
  */
 public class SalesPanel extends JPanel {
+    private static final int SEARCH_DELAY_MS = 150; // Pause in typing before the search runs
+
     private DataManager dataManager;
     private MainPOS mainPOS;
 
@@ -26,6 +36,9 @@ public class SalesPanel extends JPanel {
     private JButton clearSearchButton;
     private JTable productTable;
     private DefaultTableModel productTableModel;
+    private Timer searchDelayTimer;
+    private BackgroundTask<List<Object[]>, Void> searchTask;
+    private int searchGeneration;
 
     // Shopping cart components
     private JTable cartTable;
@@ -57,7 +70,7 @@ public class SalesPanel extends JPanel {
     private void initializeComponents() {
         // Product search section
         searchField = new JTextField(20);
-        searchField.setToolTipText("Search by product name, barcode, or description");
+        searchField.setToolTipText("Search by product name, barcode, or description; scanned barcodes go straight to the cart");
 
         categoryComboBox = new JComboBox<>();
         categoryComboBox.addItem("All Categories");
@@ -68,6 +81,9 @@ public class SalesPanel extends JPanel {
         clearSearchButton = new JButton("Clear");
         clearSearchButton.setMnemonic('L');
 
+        searchDelayTimer = new Timer(SEARCH_DELAY_MS, e -> performSearch());
+        searchDelayTimer.setRepeats(false);
+
         // Product table
         String[] productColumns = {"ID", "Name", "Price", "Category", "Stock", "Barcode"};
         productTableModel = new DefaultTableModel(productColumns, 0) {
@@ -247,9 +263,30 @@ public class SalesPanel extends JPanel {
         // Search field enter key
         searchField.addActionListener(e -> performSearch());
 
+        // Search as the cashier types, once typing pauses
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                searchDelayTimer.restart();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                searchDelayTimer.restart();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+
         // Category combo box
         categoryComboBox.addActionListener(e -> performSearch());
 
+        // Barcode scanner: a scan into the search field or product list adds the item without prompts
+        KeyboardWedgeDetector.install(searchField, this::addScannedProduct);
+        KeyboardWedgeDetector.install(productTable, this::addScannedProduct);
+
         // Add to cart button
         addToCartButton.addActionListener(e -> addSelectedProductToCart());
 
@@ -288,26 +325,34 @@ public class SalesPanel extends JPanel {
 
 
     private void performSearch() {
+        searchDelayTimer.stop();
         String searchTerm = searchField.getText().trim();
         String selectedCategory = (String) categoryComboBox.getSelectedItem();
 
-        List<Product> products;
-        if (selectedCategory != null && !selectedCategory.equals("All Categories")) {
-            products = dataManager.searchProducts(searchTerm);
-            products = products.stream()
-                    .filter(p -> selectedCategory.equals(p.getCategory()))
-                    .toList();
-        } else {
-            products = dataManager.searchProducts(searchTerm);
-        }
+        // The category is filtered inside the search
+        String category = "All Categories".equals(selectedCategory) ? null : selectedCategory;
 
-        updateProductTable(products);
+        // Search and build the rows off the EDT; a newer search replaces any still running,
+        // and a search that finishes after a newer one started is ignored
+        if (searchTask != null) {
+            searchTask.cancel(true);
+        }
+        int generation = ++searchGeneration;
+        searchTask = new BackgroundTask<List<Object[]>, Void>(
+                task -> productRows(dataManager.searchProducts(searchTerm, category), task))
+            .onSuccess(rows -> {
+                if (generation == searchGeneration) {
+                    TableRowDiff.apply(productTableModel, rows);
+                }
+            });
+        searchTask.start();
     }
 
-    private void updateProductTable(List<Product> products) {
-        productTableModel.setRowCount(0);
-
+    // Table rows of the products in stock, in ID order
+    private static List<Object[]> productRows(List<Product> products, BackgroundTask<?, ?> task) {
+        List<Object[]> rows = new ArrayList<>();
         for (Product product : products) {
+            if (task.isCancelled()) break;
             if (product.getQuantity() > 0) {
                 Object[] row = {
                     product.getId(),
@@ -318,9 +363,11 @@ public class SalesPanel extends JPanel {
                     product.getQuantity(),
                     product.getBarcode() != null ? product.getBarcode() : ""
                 };
-                productTableModel.addRow(row);
+                rows.add(row);
             }
         }
+        rows.sort(Comparator.comparingInt(row -> (Integer) row[0]));
+        return rows;
     }
 
     private void addSelectedProductToCart() {
@@ -383,7 +430,7 @@ public class SalesPanel extends JPanel {
             }
 
             currentTransaction.addItem(product, quantity);
-            updateCartTable();
+            updateCartRow(product.getId());
             updateTransactionSummary();
 
             mainPOS.updateStatus("Added " + quantity + " x " + product.getName() + " to cart");
@@ -394,6 +441,62 @@ public class SalesPanel extends JPanel {
         }
     }
 
+    /**
+     * Add one of the scanned product to the cart. A scan never opens a dialog: problems
+     * are reported with a beep and a status message so the cashier can keep scanning.
+     */
+    private void addScannedProduct(String barcode) {
+        Product product = dataManager.getProductByBarcode(barcode.trim());
+        if (product == null) {
+            Toolkit.getDefaultToolkit().beep();
+            mainPOS.updateStatus("Unknown barcode: " + barcode);
+            return;
+        }
+
+        Transaction.TransactionItem line = currentTransaction.getItem(product.getId());
+        int inCart = line != null ? line.getQuantity() : 0;
+        if (inCart + 1 > product.getQuantity()) {
+            Toolkit.getDefaultToolkit().beep();
+            mainPOS.updateStatus("Not enough stock of " + product.getName() + ". Available: " + product.getQuantity());
+            return;
+        }
+
+        currentTransaction.addItem(product, 1);
+        updateCartRow(product.getId());
+        updateTransactionSummary();
+
+        if (product.getQuantity() - (inCart + 1) <= product.getMinStockLevel()) {
+            mainPOS.updateStatus("Added " + product.getName() + " (" + (inCart + 1) + " in cart) - minimum stock reached");
+        } else {
+            mainPOS.updateStatus("Added " + product.getName() + " (" + (inCart + 1) + " in cart)");
+        }
+    }
+
+    // Show the cart line of a product just added without rebuilding the cart table;
+    // rows are in the same order as the transaction's items
+    @SuppressWarnings("unchecked")
+    private void updateCartRow(int productId) {
+        int row = currentTransaction.indexOfItem(productId);
+        if (row < 0) {
+            return;
+        }
+        Transaction.TransactionItem item = currentTransaction.getItem(productId);
+        if (row >= cartTableModel.getRowCount()) {
+            cartTableModel.addRow(new Object[] {
+                item.getProductName(),
+                item.getQuantity(),
+                String.format("$%.2f", item.getUnitPrice() / 100.0),
+                String.format("$%.2f", item.getTotalPrice() / 100.0)
+            });
+        } else {
+            // Set directly: a quantity edit event would re-validate the whole cart
+            Vector<Object> cells = (Vector<Object>) cartTableModel.getDataVector().get(row);
+            cells.set(1, item.getQuantity());
+            cells.set(3, String.format("$%.2f", item.getTotalPrice() / 100.0));
+            cartTableModel.fireTableRowsUpdated(row, row);
+        }
+    }
+
     private void removeSelectedItemFromCart() {
         int selectedRow = cartTable.getSelectedRow();
         if (selectedRow == -1) {
@@ -406,8 +509,8 @@ public class SalesPanel extends JPanel {
 
         // Find the product in the transaction
         for (Transaction.TransactionItem item : currentTransaction.getItems()) {
-            if (item.getProduct().getName().equals(productName)) {
-                currentTransaction.removeItem(item.getProduct().getId());
+            if (item.getProductName().equals(productName)) {
+                currentTransaction.removeItem(item.getProductId());
                 break;
             }
         }
@@ -438,17 +541,17 @@ public class SalesPanel extends JPanel {
         }
 
         for (Transaction.TransactionItem item : currentTransaction.getItems()) {
-            if (item.getProduct().getName().equals(productName)) {
+            if (item.getProductName().equals(productName)) {
                 if (newQuantity <= 0) {
-                    currentTransaction.removeItem(item.getProduct().getId());
+                    currentTransaction.removeItem(item.getProductId());
                 } else {
-                    Product product = dataManager.getProductById(item.getProduct().getId());
+                    Product product = dataManager.getProductById(item.getProductId());
                     if (newQuantity > product.getQuantity()) {
                         JOptionPane.showMessageDialog(this,
                             "Not enough stock. Available: " + product.getQuantity(),
                             "Insufficient Stock", JOptionPane.WARNING_MESSAGE);
                     } else {
-                        currentTransaction.updateItemQuantity(item.getProduct().getId(), newQuantity);
+                        currentTransaction.updateItemQuantity(item.getProductId(), newQuantity);
                     }
                 }
                 break;
@@ -469,7 +572,7 @@ public class SalesPanel extends JPanel {
         for (Transaction.TransactionItem item : currentTransaction.getItems()) {
 
             Object[] row = {
-                item.getProduct().getName(),
+                item.getProductName(),
                 item.getQuantity(),
                 String.format("$%.2f", item.getUnitPrice() / 100.0),
                 String.format("$%.2f", item.getTotalPrice() / 100.0)
@@ -494,8 +597,8 @@ public class SalesPanel extends JPanel {
             categoryComboBox.addItem(category);
         }
 
-        // Refresh product table
-        updateProductTable(dataManager.getAllProducts());
+        // Refresh product table, keeping the current search
+        performSearch();
     }
 
 
@@ -254,7 +254,7 @@ public class SettingsPanel extends JPanel {
             dataManager.setSetting("taxRate", taxRate / 100.0); // Convert percentage to decimal
             dataManager.setSetting("uiScale", uiScaleSlider.getValue() / 100.0); // Convert percentage to decimal
 
-            dataManager.saveData();
+            dataManager.requestSave();
 
             // Apply UI scaling immediately
             mainPOS.applyUIScaling();
@@ -286,7 +286,7 @@ public class SettingsPanel extends JPanel {
             dataManager.setSetting("taxRate", 0.08);
             dataManager.setSetting("uiScale", 1.0);
 
-            dataManager.saveData();
+            dataManager.requestSave();
 
             // Reload settings in UI
             loadSettings();
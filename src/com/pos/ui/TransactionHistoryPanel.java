@@ -3,6 +3,7 @@ package com.pos.ui;
 import com.pos.manager.DataManager;
 import com.pos.model.Transaction;
 import com.pos.printer.ReceiptPrinter;
+import com.pos.ui.util.BackgroundTask;
 
 
 import javax.swing.*;
@@ -12,12 +13,15 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Transaction History Panel - Interface for viewing transaction history
  */
 public class TransactionHistoryPanel extends JPanel {
+    private static final int SEARCH_PROGRESS_INTERVAL = 1000; // Transactions between progress updates
+
     private DataManager dataManager;
     private MainPOS mainPOS;
 
@@ -42,6 +46,11 @@ public class TransactionHistoryPanel extends JPanel {
     private JLabel totalSalesLabel;
     private JLabel averageSaleLabel;
 
+    // Background search
+    private JProgressBar searchProgressBar;
+    private JButton cancelSearchButton;
+    private BackgroundTask<List<Transaction>, Transaction> searchTask;
+
     public TransactionHistoryPanel(DataManager dataManager, MainPOS mainPOS) {
         this.dataManager = dataManager;
         this.mainPOS = mainPOS;
@@ -111,6 +120,12 @@ public class TransactionHistoryPanel extends JPanel {
         totalTransactionsLabel = new JLabel("Total Transactions: 0");
         totalSalesLabel = new JLabel("Total Sales: 0.00");
         averageSaleLabel = new JLabel("Average Sale: 0.00");
+
+        searchProgressBar = new JProgressBar(0, 100);
+        searchProgressBar.setVisible(false);
+
+        cancelSearchButton = new JButton("Cancel Search");
+        cancelSearchButton.setEnabled(false);
     }
 
 
@@ -172,6 +187,8 @@ public class TransactionHistoryPanel extends JPanel {
 
         // Summary panel
         JPanel summaryPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        summaryPanel.add(searchProgressBar);
+        summaryPanel.add(cancelSearchButton);
         summaryPanel.add(totalTransactionsLabel);
         summaryPanel.add(totalSalesLabel);
         summaryPanel.add(averageSaleLabel);
@@ -238,19 +255,49 @@ public class TransactionHistoryPanel extends JPanel {
                 break;
         }
 
-        List<Transaction> transactions = dataManager.getTransactionsByDateRange(startDate, endDate);
-
-        // Apply search filter
-        if (!searchTerm.isEmpty()) {
-            transactions = transactions.stream()
-                    .filter(t -> String.valueOf(t.getTransactionId()).contains(searchTerm) ||
-                               (t.getCustomerName() != null &&
-                                t.getCustomerName().toLowerCase().contains(searchTerm.toLowerCase())))
-                    .toList();
+        // Filter on a background thread, streaming matches into the table as they are found
+        if (searchTask != null) {
+            searchTask.cancel(true);
+        }
+        transactionTableModel.setRowCount(0);
+        if (!dataManager.isHistoryLoaded()) {
+            // The search waits for the history still loading after startup
+            totalTransactionsLabel.setText("Loading sales history...");
         }
 
-        updateTransactionTable(transactions);
-        updateSummaryLabels(transactions);
+        LocalDateTime rangeStart = startDate;
+        LocalDateTime rangeEnd = endDate;
+        searchTask = new BackgroundTask<List<Transaction>, Transaction>(task -> {
+            List<Transaction> candidates = dataManager.getTransactionsByDateRange(rangeStart, rangeEnd);
+            List<Transaction> matches = new ArrayList<>();
+            for (int i = 0; i < candidates.size(); i++) {
+                if (i % SEARCH_PROGRESS_INTERVAL == 0) {
+                    if (task.isCancelled()) break;
+                    task.setPercent(i * 100 / candidates.size());
+                }
+                Transaction transaction = candidates.get(i);
+                if (matchesSearch(transaction, searchTerm)) {
+                    matches.add(transaction);
+                    task.emit(transaction);
+                }
+            }
+            return matches;
+        })
+            .onChunks(this::appendTransactionRows)
+            .onSuccess(matches -> {
+                // Rows already streamed in are always a prefix of the matches
+                appendTransactionRows(matches.subList(transactionTableModel.getRowCount(), matches.size()));
+                updateSummaryLabels(matches);
+            })
+            .showProgressIn(searchProgressBar, cancelSearchButton);
+        searchTask.start();
+    }
+
+    private static boolean matchesSearch(Transaction transaction, String searchTerm) {
+        if (searchTerm.isEmpty()) return true;
+        return String.valueOf(transaction.getTransactionId()).contains(searchTerm) ||
+               (transaction.getCustomerName() != null &&
+                transaction.getCustomerName().toLowerCase().contains(searchTerm.toLowerCase()));
     }
 
     private void clearFilters() {
@@ -259,10 +306,7 @@ public class TransactionHistoryPanel extends JPanel {
         refreshTransactionTable();
     }
 
-    private void updateTransactionTable(List<Transaction> transactions) {
-        transactionTableModel.setRowCount(0);
-
-
+    private void appendTransactionRows(List<Transaction> transactions) {
         for (Transaction transaction : transactions) {
             Object[] row = {
                 transaction.getTransactionId(),
@@ -351,7 +395,7 @@ public class TransactionHistoryPanel extends JPanel {
 
         for (Transaction.TransactionItem item : transaction.getItems()) {
             Object[] row = {
-                item.getProduct().getName(),
+                item.getProductName(),
                 item.getQuantity(),
                 String.format("$%.2f", item.getUnitPrice() / 100.0),
                 String.format("$%.2f", item.getTotalPrice() / 100.0)
@@ -0,0 +1,160 @@
+package com.pos.ui.util;
+
+import com.pos.manager.TaskProgress;
+
+import javax.swing.*;
+import java.awt.event.ActionListener;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Runs reports, searches and exports off the Event Dispatch Thread.
+ * The work reports progress and streams partial results (chunks) through the task;
+ * chunks, completion and failure are delivered back on the EDT. An optional progress
+ * bar and cancel button are shown while the task runs; a newer task started with the
+ * same controls supersedes this one, and a superseded task delivers nothing.
+ *
+ * @param <T> final result
+ * @param <V> partial result published while running
+ */
+public class BackgroundTask<T, V> extends SwingWorker<T, V> implements TaskProgress {
+
+    /**
+     * The work to run in the background; it should check isCancelled() regularly
+     */
+    public interface Work<T, V> {
+        T run(BackgroundTask<T, V> task) throws Exception;
+    }
+
+    private final Work<T, V> work;
+    private Consumer<List<V>> chunkHandler = chunks -> { };
+    private Consumer<T> successHandler = result -> { };
+    private Consumer<Exception> failureHandler = e -> System.err.println("Error in background task: " + e.getMessage());
+    private Runnable cancelHandler = () -> { };
+    private JProgressBar progressBar;
+    private JButton cancelButton;
+    private ActionListener cancelListener;
+
+    public BackgroundTask(Work<T, V> work) {
+        this.work = work;
+    }
+
+    public BackgroundTask<T, V> onChunks(Consumer<List<V>> handler) {
+        this.chunkHandler = handler;
+        return this;
+    }
+
+    public BackgroundTask<T, V> onSuccess(Consumer<T> handler) {
+        this.successHandler = handler;
+        return this;
+    }
+
+    public BackgroundTask<T, V> onFailure(Consumer<Exception> handler) {
+        this.failureHandler = handler;
+        return this;
+    }
+
+    public BackgroundTask<T, V> onCancel(Runnable handler) {
+        this.cancelHandler = handler;
+        return this;
+    }
+
+    /**
+     * Show progress in the given bar and let the given button cancel the task (either may be null)
+     */
+    public BackgroundTask<T, V> showProgressIn(JProgressBar progressBar, JButton cancelButton) {
+        this.progressBar = progressBar;
+        this.cancelButton = cancelButton;
+        return this;
+    }
+
+    /**
+     * Start the task; must be called on the EDT
+     */
+    public void start() {
+        // A newer task sharing the same controls takes them over
+        if (progressBar != null) {
+            progressBar.putClientProperty(BackgroundTask.class, this);
+            progressBar.setIndeterminate(true);
+            progressBar.setValue(0);
+            progressBar.setVisible(true);
+            addPropertyChangeListener(e -> {
+                if ("progress".equals(e.getPropertyName()) && ownsControl(progressBar)) {
+                    progressBar.setIndeterminate(false);
+                    progressBar.setValue((Integer) e.getNewValue());
+                }
+            });
+        }
+        if (cancelButton != null) {
+            cancelButton.putClientProperty(BackgroundTask.class, this);
+            cancelListener = e -> cancel(true);
+            cancelButton.addActionListener(cancelListener);
+            cancelButton.setEnabled(true);
+        }
+        execute();
+    }
+
+    @Override
+    public void setPercent(int percent) {
+        setProgress(Math.max(0, Math.min(100, percent)));
+    }
+
+    /**
+     * Hand a partial result to the EDT while the work continues
+     */
+    public void emit(V chunk) {
+        publish(chunk);
+    }
+
+    private boolean isSuperseded() {
+        return (progressBar != null && !ownsControl(progressBar))
+            || (cancelButton != null && !ownsControl(cancelButton));
+    }
+
+    private boolean ownsControl(JComponent control) {
+        return control.getClientProperty(BackgroundTask.class) == this;
+    }
+
+    @Override
+    protected T doInBackground() throws Exception {
+        return work.run(this);
+    }
+
+    @Override
+    protected void process(List<V> chunks) {
+        // Chunks still queued after the work finished are covered by the final result
+        if (!isCancelled() && !isDone() && !isSuperseded()) {
+            chunkHandler.accept(chunks);
+        }
+    }
+
+    @Override
+    protected void done() {
+        if (progressBar != null && ownsControl(progressBar)) {
+            progressBar.setVisible(false);
+        }
+        if (cancelButton != null) {
+            cancelButton.removeActionListener(cancelListener);
+            if (ownsControl(cancelButton)) {
+                cancelButton.setEnabled(false);
+            }
+        }
+
+        if (isSuperseded()) {
+            return;
+        }
+        if (isCancelled()) {
+            cancelHandler.run();
+            return;
+        }
+        try {
+            successHandler.accept(get());
+        } catch (CancellationException | InterruptedException e) {
+            cancelHandler.run();
+        } catch (ExecutionException e) {
+            failureHandler.accept(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.pos.ui.util;
+
+import javax.swing.*;
+import javax.swing.text.JTextComponent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.util.function.Consumer;
+
+/**
+ * Recognises codes typed by a keyboard-wedge barcode scanner.
+ *
+ * A scanner types the whole code within a few milliseconds per key and ends it with Enter,
+ * far faster than anyone types by hand. When Enter follows a burst of at least MIN_LENGTH
+ * characters with no gap longer than MAX_KEY_GAP_MS, the Enter is consumed, a text field
+ * gets back the text it had before the burst, and the code is handed to the scan handler.
+ * Anything typed slower, or shorter, passes through untouched. Gaps are measured from the
+ * event timestamps, so a busy EDT delivering queued keys late does not break up a burst.
+ */
+public class KeyboardWedgeDetector extends KeyAdapter {
+
+    private static final long MAX_KEY_GAP_MS = 40;
+    private static final int MIN_LENGTH = 4;
+
+    private final JComponent component;
+    private final Consumer<String> scanHandler;
+    private final StringBuilder burst = new StringBuilder();
+    private long lastKeyTime;
+    private String textBeforeBurst;
+    private int caretBeforeBurst;
+
+    private KeyboardWedgeDetector(JComponent component, Consumer<String> scanHandler) {
+        this.component = component;
+        this.scanHandler = scanHandler;
+    }
+
+    /**
+     * Pass codes scanned while the component has focus to scanHandler (called on the EDT)
+     */
+    public static void install(JComponent component, Consumer<String> scanHandler) {
+        component.addKeyListener(new KeyboardWedgeDetector(component, scanHandler));
+    }
+
+    @Override
+    public void keyTyped(KeyEvent e) {
+        char c = e.getKeyChar();
+        if (c == KeyEvent.CHAR_UNDEFINED || Character.isISOControl(c)) {
+            return;
+        }
+        if (burst.length() == 0 || e.getWhen() - lastKeyTime > MAX_KEY_GAP_MS) {
+            // Listeners see the key before the text field inserts it
+            burst.setLength(0);
+            if (component instanceof JTextComponent) {
+                textBeforeBurst = ((JTextComponent) component).getText();
+                caretBeforeBurst = ((JTextComponent) component).getCaretPosition();
+            }
+        }
+        burst.append(c);
+        lastKeyTime = e.getWhen();
+    }
+
+    @Override
+    public void keyPressed(KeyEvent e) {
+        if (e.getKeyCode() != KeyEvent.VK_ENTER) {
+            return;
+        }
+        boolean scanned = burst.length() >= MIN_LENGTH && e.getWhen() - lastKeyTime <= MAX_KEY_GAP_MS;
+        String code = burst.toString();
+        burst.setLength(0);
+        if (!scanned) {
+            return;
+        }
+
+        e.consume(); // Keeps the Enter from reaching the component's own action
+        if (component instanceof JTextComponent) {
+            JTextComponent field = (JTextComponent) component;
+            field.setText(textBeforeBurst);
+            field.setCaretPosition(Math.min(caretBeforeBurst, textBeforeBurst.length()));
+        }
+        scanHandler.accept(code);
+    }
+}
@@ -0,0 +1,125 @@
+package com.pos.ui.util;
+
+import javax.swing.table.DefaultTableModel;
+import java.util.*;
+
+/**
+ * Brings a table model up to date with a new list of rows by changing only what differs.
+ *
+ * Rows are identified by the integer in their first column, and both the table and the new
+ * rows are in ascending order of it. Rows only in the table are removed and rows only in the
+ * new list are inserted a run of neighbours at a time; rows in both get just their changed
+ * cells updated. The table therefore repaints only what changed and keeps the selection on
+ * the same row. When the two differ in many places the rows are replaced in one go instead,
+ * which is cheaper than shifting the rest of the table once per run.
+ */
+public final class TableRowDiff {
+
+    private static final int MAX_RUNS = 64;
+
+    private TableRowDiff() {
+    }
+
+    /**
+     * Make the model hold exactly the given rows, which must be in ascending order of their
+     * first column; must be called on the EDT
+     */
+    @SuppressWarnings("unchecked")
+    public static void apply(DefaultTableModel model, List<Object[]> rows) {
+        List<Vector<Object>> current = (List<Vector<Object>>) (List<?>) model.getDataVector();
+        if (!isSorted(current) || countRuns(current, rows) > MAX_RUNS) {
+            current.clear();
+            for (Object[] row : rows) {
+                current.add(new Vector<>(Arrays.asList(row)));
+            }
+            model.fireTableDataChanged();
+            return;
+        }
+
+        int position = 0;
+        int next = 0;
+        while (position < current.size() || next < rows.size()) {
+            int order = compare(current, position, rows, next);
+            if (order < 0) {
+                int end = position + 1;
+                while (end < current.size() && compare(current, end, rows, next) < 0) {
+                    end++;
+                }
+                current.subList(position, end).clear();
+                model.fireTableRowsDeleted(position, end - 1);
+            } else if (order > 0) {
+                List<Vector<Object>> inserted = new ArrayList<>();
+                do {
+                    inserted.add(new Vector<>(Arrays.asList(rows.get(next++))));
+                } while (next < rows.size() && compare(current, position, rows, next) > 0);
+                current.addAll(position, inserted);
+                model.fireTableRowsInserted(position, position + inserted.size() - 1);
+                position += inserted.size();
+            } else {
+                Vector<Object> row = current.get(position);
+                Object[] update = rows.get(next);
+                boolean changed = false;
+                for (int column = 0; column < update.length; column++) {
+                    if (!Objects.equals(row.get(column), update[column])) {
+                        row.set(column, update[column]);
+                        changed = true;
+                    }
+                }
+                if (changed) {
+                    model.fireTableRowsUpdated(position, position);
+                }
+                position++;
+                next++;
+            }
+        }
+    }
+
+    // Number of deleted runs, inserted runs and changed rows needed to turn current into rows
+    private static int countRuns(List<Vector<Object>> current, List<Object[]> rows) {
+        int runs = 0;
+        int last = 0;
+        int position = 0;
+        int next = 0;
+        while (position < current.size() || next < rows.size()) {
+            int order = compare(current, position, rows, next);
+            if (order < 0) {
+                if (last >= 0) runs++;
+                position++;
+            } else if (order > 0) {
+                if (last <= 0) runs++;
+                next++;
+            } else {
+                if (!sameCells(current.get(position), rows.get(next))) runs++;
+                position++;
+                next++;
+            }
+            last = order;
+        }
+        return runs;
+    }
+
+    // Order of the keys at the two positions, where the end of either list comes after every key
+    private static int compare(List<Vector<Object>> current, int position, List<Object[]> rows, int next) {
+        if (position == current.size()) return 1;
+        if (next == rows.size()) return -1;
+        return Integer.compare((Integer) current.get(position).get(0), (Integer) rows.get(next)[0]);
+    }
+
+    private static boolean sameCells(Vector<Object> row, Object[] update) {
+        for (int column = 0; column < update.length; column++) {
+            if (!Objects.equals(row.get(column), update[column])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSorted(List<Vector<Object>> current) {
+        for (int i = 1; i < current.size(); i++) {
+            if ((Integer) current.get(i - 1).get(0) >= (Integer) current.get(i).get(0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}